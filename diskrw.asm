@@ -0,0 +1,79 @@
+####################################################
+# This program writes ten values to scattered
+# addresses on the disk and then reads them back,
+# printing each one with the OUTPUT system call.
+# The disk device should have id 2.
+###################################################
+
+#Reserve the disk device
+SET r0 2       #device #2 (disk)
+PUSH r0        #push argument on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #address
+SET r2 6400    #address increment (100 blocks)
+SET r3 64000   #address limit
+
+#Write loop: store address+7 at each address
+:wloop
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r1        #push address
+SET r4 7       #value offset
+ADD r4 r1 r4   #value = address + 7
+PUSH r4        #push value to send to device
+SET r0 6       #WRITE system call
+PUSH r0        #push system call id
+TRAP           #system call to write the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+ADD r1 r2 r1
+BNE r1 r3 wloop
+
+#Read loop: read back in reverse order
+:rloop
+SUB r1 r1 r2
+SET r0 2       #device #2 (disk)
+PUSH r0        #push device number
+PUSH r1        #push address
+SET r0 5       #READ system call
+PUSH r0        #push system call id
+TRAP           #system call to read the value
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#print the value that was read
+SET r4 1       #OUTPUT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #print the value (already on the stack)
+
+SET r0 0
+BNE r1 r0 rloop
+
+#close the disk device
+SET r4 2       #disk device id
+PUSH r4        #push device number
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,49 @@
+####################################################
+# This program starts five copies of the first
+# registered program with a single SPAWN_N call,
+# waits for all of them to exit and prints the number
+# of children it waited for.
+###################################################
+
+#Start the children
+SET r0 0       #program index
+PUSH r0        #push the program index
+SET r0 5       #number of processes
+PUSH r0        #push the number of processes
+SET r4 23      #SPAWN_N sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #start the processes
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r4         #discard the number started
+
+#Wait for the children until there are none left
+SET r1 0       #children waited for
+SET r2 1       #increment amount
+:wait
+SET r4 22      #WAIT sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #wait for a child to exit
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 done #no children left
+POP r0         #discard the child's exit code
+POP r0         #discard the child's id
+ADD r1 r1 r2
+BRANCH wait
+
+#print the number of children
+:done
+PUSH r1        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,65 @@
+####################################################
+# This program grows its memory by 200 words with
+# SBRK, stores the numbers 1 to 10 in the new words
+# and then adds them up and prints the total (55).
+# A value it pushed before growing is still on top of
+# the stack afterwards and is printed too (77).
+###################################################
+
+#Leave something on the stack to check that it moves
+SET r0 77
+PUSH r0
+
+#Grow by 200 words
+SET r0 200     #number of words
+PUSH r0        #push the number of words
+SET r4 24      #SBRK sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #resize the memory
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r3         #r3 = the new size
+SET r0 100
+SUB r3 r3 r0   #r3 = address of the first number (well below the stack)
+
+#Store 1 to 10
+SET r1 1       #next number
+SET r2 1       #increment amount
+COPY r0 r3
+:store
+SAVE r1 r0
+ADD r0 r0 r2
+ADD r1 r1 r2
+SET r4 11      #limit
+BNE r1 r4 store
+
+#Add them up
+SET r1 0       #total
+COPY r0 r3
+:sum
+LOAD r4 r0
+ADD r1 r1 r4
+ADD r0 r0 r2
+SET r4 10
+ADD r4 r3 r4   #r4 = address after the last number
+BNE r0 r4 sum
+
+#print the total
+PUSH r1        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#print what was on the stack
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
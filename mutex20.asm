@@ -0,0 +1,141 @@
+####################################################
+# This program adds one to a counter in shared
+# memory twenty times while holding a lock and then
+# prints the counter.  Run several copies of it: the
+# last copy to finish prints 20 times the number of
+# copies.  Each copy sleeps while it holds the lock
+# so the others find it taken and wait for it with
+# FUTEX_WAIT instead of spinning.  Taking a free lock
+# is done with CAS alone and never traps.
+#
+# The lock is word 0 of the segment: 0 = free,
+# 1 = taken, 2 = taken and someone may be waiting.
+# The counter is word 1.
+###################################################
+
+#Find (or create) the 2 word segment with key 5
+SET r0 5       #segment key
+PUSH r0        #push the key on the stack
+SET r0 2       #segment size
+PUSH r0        #push the size on the stack
+SET r4 15      #SHMGET sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #find the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#Map it (the segment id is already on the stack)
+SET r4 16      #SHMAT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #attach the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r3         #r3 = address of the lock
+
+#Initialize the variables
+SET r1 0       #iteration
+SET r2 1       #increment amount
+
+#Take the lock: free -> taken with a single CAS
+:lock
+SET r0 0
+SET r4 1
+CAS r0 r4 r3   #if lock == 0 then lock = 1 (r0 = old lock)
+SET r4 0
+BNE r0 r4 contended
+BRANCH locked
+
+#The lock is taken: mark it as waited on and wait
+:contended
+SET r4 2
+BNE r0 r4 mark
+BRANCH sleep
+:mark
+SET r0 1
+SET r4 2
+CAS r0 r4 r3   #if lock == 1 then lock = 2 (r0 = old lock)
+SET r4 0
+BNE r0 r4 sleep
+BRANCH retry   #it was freed in the meantime
+:sleep
+PUSH r3        #push the address of the lock
+SET r4 2
+PUSH r4        #push the value to wait on
+SET r4 18      #FUTEX_WAIT sys call id
+PUSH r4        #push the sys call id
+TRAP           #wait until the lock is released
+POP r4         #discard the return code (just try again)
+:retry
+SET r0 0
+SET r4 2
+CAS r0 r4 r3   #if lock == 0 then lock = 2 (others may be waiting)
+SET r4 0
+BNE r0 r4 contended
+
+#Critical section: counter = counter + 1 (slowly)
+:locked
+SET r4 1
+ADD r4 r3 r4   #r4 = address of the counter
+LOAD r0 r4     #r0 = counter
+SET r4 100
+PUSH r4        #push the number of ticks to sleep
+SET r4 12      #SLEEP sys call id
+PUSH r4        #push the sys call id
+TRAP           #hold the lock for a while
+POP r4         #discard the return code
+SET r4 1
+ADD r4 r3 r4   #r4 = address of the counter
+ADD r0 r0 r2
+SAVE r0 r4     #counter = r0 + 1
+
+#Release the lock and wake a waiter if there may be one
+SET r0 1
+SET r4 0
+CAS r0 r4 r3   #if lock == 1 then lock = 0 (r0 = old lock)
+SET r4 1
+BNE r0 r4 wake
+BRANCH next
+:wake
+SET r4 0
+SAVE r4 r3     #lock = 0
+PUSH r3        #push the address of the lock
+SET r4 1
+PUSH r4        #push the number of processes to wake
+SET r4 19      #FUTEX_WAKE sys call id
+PUSH r4        #push the sys call id
+TRAP           #wake one waiter
+POP r4         #discard the return code
+POP r4         #discard the number woken
+
+#Repeat 20 times
+:next
+ADD r1 r1 r2
+SET r4 20      #limit
+BNE r1 r4 lock
+
+#print the counter
+SET r4 1
+ADD r4 r3 r4   #r4 = address of the counter
+LOAD r0 r4
+PUSH r0        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#unmap the segment
+SET r4 17      #SHMDT sys call id
+PUSH r4        #push the sys call id
+TRAP           #detach the segment
+POP r4         #discard the return code
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
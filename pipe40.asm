@@ -0,0 +1,93 @@
+####################################################
+# This program passes the numbers from 1 to 40
+# between two processes through a pipe.  Run two
+# copies of it: the copy with the even process id
+# writes the numbers into the pipe and the copy with
+# the odd process id reads them and prints each one
+# with the OUTPUT system call.  The pipe buffers
+# fewer than 40 values so the writer has to wait for
+# the reader as well.
+###################################################
+
+#Open the pipe with key 7
+SET r0 7       #pipe key
+PUSH r0        #push the key on the stack
+SET r4 14      #PIPE sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the pipe
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r3         #get the pipe descriptor
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+
+#Pick a role: r0 = pid % 2
+SET r4 2       #GETPID sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #get the process id
+POP r0         #r0 = pid
+SET r4 2
+DIV r4 r0 r4   #r4 = pid / 2
+ADD r4 r4 r4   #r4 = (pid / 2) * 2
+SUB r0 r0 r4   #r0 = pid % 2
+SET r4 0
+BNE r0 r4 rloop
+
+#Writer: send 1..40
+:wloop
+ADD r1 r2 r1
+PUSH r3        #push the pipe descriptor
+PUSH r1        #push address (arg not used by a pipe so any val will do)
+PUSH r1        #push the value to send
+SET r4 6       #WRITE system call id
+PUSH r4        #push the sys call id
+TRAP           #write the value into the pipe
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 done #stop on error
+
+SET r0 40      #limit
+BNE r1 r0 wloop
+BRANCH done
+
+#Reader: receive and print 40 values
+:rloop
+ADD r1 r2 r1
+PUSH r3        #push the pipe descriptor
+PUSH r1        #push address (arg not used by a pipe so any val will do)
+SET r4 5       #READ system call id
+PUSH r4        #push the sys call id
+TRAP           #read a value from the pipe
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 done #stop on error
+
+#print the value that was read
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id (the value is already on the stack)
+TRAP           #print the value
+
+SET r0 40      #limit
+BNE r1 r0 rloop
+
+#close the pipe
+:done
+PUSH r3        #push the pipe descriptor
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the pipe
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,65 @@
+####################################################
+# This program prints twenty multiples of 1000 to the
+# console device with a single DMA write.  The values
+# are saved in a buffer at address 200 and the whole
+# buffer is handed to the console in one system call.
+# The console device must have id = 1 and the process
+# must be at least 240 words long.
+###################################################
+
+#Reserve the console device
+SET r0 1       #device #1 (console output)
+PUSH r0        #push device id on stack
+SET r4 3       #OPEN sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #open the device
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Succes code
+BNE r0 r4 exit #exit program on error
+
+#Initialize the variables
+SET r1 0       #value
+SET r2 1000    #increment amount
+SET r3 220     #end of the buffer
+SET r0 200     #address of the next word in the buffer
+
+#Fill the buffer
+:fill
+ADD r1 r2 r1
+SAVE r1 r0     #buffer[r0] = value
+SET r4 1
+ADD r0 r4 r0   #move to the next word
+BNE r0 r3 fill #repeat 20 times
+
+#print the whole buffer to the console
+SET r4 1       #device id 1 = console
+PUSH r4        #push device number
+SET r0 0
+PUSH r0        #push address (arg not used by this device so any val will do)
+SET r0 200
+PUSH r0        #push the address of the buffer
+SET r0 20
+PUSH r0        #push the number of words
+SET r4 11      #WRITE_BLOCK system call id
+PUSH r4        #push the sys call id
+TRAP           #system call to print the buffer
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#close the console device
+SET r0 1
+PUSH r0        #push device number 1 (console output)
+SET r4 4       #CLOSE sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #close the device
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
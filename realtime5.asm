@@ -0,0 +1,63 @@
+####################################################
+# This program starts three copies of the first
+# registered program to load the CPU, asks to run in
+# the real-time class (a budget of 150 ticks in every
+# 600 tick period) and then does a short burst of work
+# in each of five periods.  It prints the number of
+# periods it completed.
+###################################################
+
+#Start the background load
+SET r0 0       #program index
+PUSH r0        #push the program index
+SET r0 3       #number of processes
+PUSH r0        #push the number of processes
+SET r4 23      #SPAWN_N sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #start the processes
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 join #no load; run anyway
+POP r4         #discard the number started
+
+#Join the real-time class
+:join
+SET r0 600     #period
+PUSH r0        #push the period
+SET r0 150     #budget
+PUSH r0        #push the budget
+SET r4 25      #SET_REALTIME sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #ask to be admitted
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program if not admitted
+
+SET r1 0       #periods completed
+SET r2 1       #increment amount
+:period
+SET r3 0       #work counter
+SET r0 10      #work per period
+:work
+ADD r3 r3 r2
+BNE r3 r0 work
+
+ADD r1 r1 r2
+SET r4 26      #NEXT_PERIOD sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #wait for the next period
+POP r4         #discard the return code
+SET r0 5       #periods to run
+BNE r1 r0 period
+
+#print the number of periods
+PUSH r1        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
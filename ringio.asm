@@ -0,0 +1,131 @@
+####################################################
+# This program opens the disk, writes two values,
+# reads them back and closes the disk with a single
+# RING_SUBMIT system call instead of one trap per
+# request.  It then prints the status and value of
+# every completion entry with the OUTPUT system call
+# (0 0 0 0 0 0 0 42 0 43 0 0).  The ring is at
+# address 400 and the completion entries follow it
+# at address 424.  The disk device should have id 2
+# and the process must be at least 440 words long.
+###################################################
+
+#Fill in the submission entries (op, device, address, data)
+SET r1 400     #address of the next word in the ring
+SET r2 1       #increment amount
+
+#OPEN the disk
+SET r0 3       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#WRITE 42 to disk address 0
+SET r0 6       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 42      #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#WRITE 43 to disk address 6400
+SET r0 6       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 6400    #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 43      #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#READ disk address 0
+SET r0 5       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#READ disk address 6400
+SET r0 5       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 6400    #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#CLOSE the disk
+SET r0 4       #op
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 2       #device
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #address
+SAVE r0 r1
+ADD r1 r2 r1
+SET r0 0       #data
+SAVE r0 r1
+ADD r1 r2 r1
+
+#Submit the whole ring
+SET r0 400
+PUSH r0        #push the address of the ring
+SET r0 6
+PUSH r0        #push the number of entries
+SET r4 13      #RING_SUBMIT system call id
+PUSH r4        #push the sys call id
+TRAP           #start every request and wait for them
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#Print the completion entries
+SET r1 424     #address of the first completion entry
+SET r3 436     #end of the completion entries
+:print
+LOAD r0 r1
+PUSH r0        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+ADD r1 r2 r1
+BNE r1 r3 print
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,103 @@
+####################################################
+# This program passes the numbers from 1 to 10
+# between two processes through shared memory.  Run
+# two copies of it: the copy with the even process
+# id stores the numbers in words 1..10 of the shared
+# segment and then sets word 0 to 1.  The copy with
+# the odd process id waits (sleeping) until
+# word 0 is set and then prints words 1..10 with the
+# OUTPUT system call.  No data are copied by the OS.
+###################################################
+
+#Find (or create) the 11 word segment with key 3
+SET r0 3       #segment key
+PUSH r0        #push the key on the stack
+SET r0 11      #segment size
+PUSH r0        #push the size on the stack
+SET r4 15      #SHMGET sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #find the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#Map it (the segment id is already on the stack)
+SET r4 16      #SHMAT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #attach the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r3         #r3 = address of the flag word
+
+#Initialize the variables
+SET r2 1       #increment amount
+ADD r1 r3 r2   #r1 = address of the first number
+
+#Pick a role: r0 = pid % 2
+SET r4 2       #GETPID sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #get the process id
+POP r0         #r0 = pid
+SET r4 2
+DIV r4 r0 r4   #r4 = pid / 2
+ADD r4 r4 r4   #r4 = (pid / 2) * 2
+SUB r0 r0 r4   #r0 = pid % 2
+SET r4 0
+BNE r0 r4 wait
+
+#Writer: store 1..10 and then raise the flag
+SET r0 0       #value
+:wloop
+ADD r0 r2 r0
+SAVE r0 r1     #segment[r1] = value
+ADD r1 r2 r1
+SET r4 10      #limit
+BNE r0 r4 wloop
+SAVE r2 r3     #flag = 1
+BRANCH done
+
+#Reader: wait for the flag
+:wait
+LOAD r0 r3     #r0 = flag
+BNE r0 r2 idle
+
+#print the ten numbers
+SET r0 11
+ADD r0 r3 r0   #r0 = end of the numbers
+:rloop
+LOAD r4 r1     #r4 = segment[r1]
+PUSH r4        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+ADD r1 r2 r1
+BNE r1 r0 rloop
+BRANCH done
+
+#let the writer run and check again
+:idle
+SET r4 100
+PUSH r4        #push the number of ticks to sleep
+SET r4 12      #SLEEP sys call id
+PUSH r4        #push the sys call id
+TRAP           #sleep
+POP r4         #discard the return code
+BRANCH wait
+
+#unmap the segment
+:done
+SET r4 17      #SHMDT sys call id
+PUSH r4        #push the sys call id
+TRAP           #detach the segment
+POP r4         #discard the return code
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
@@ -0,0 +1,41 @@
+####################################################
+# This program prints the numbers between 1 and 5
+# with the OUTPUT system call, sleeping for 1000
+# ticks between each one instead of spinning.
+###################################################
+
+#Initialize the variables
+SET r1 0       #counter
+SET r2 1       #increment amount
+SET r3 5       #limit
+
+#begin loop
+:loop
+ADD r1 r2 r1
+
+#print the current value of the counter
+PUSH r1        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#sleep for a while
+SET r0 1000    #number of ticks
+PUSH r0        #push the number of ticks
+SET r4 12      #SLEEP sys call id
+PUSH r4        #push the sys call id
+TRAP           #go to sleep
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#end of loop
+BNE r1 r3 loop #repeat 5 times
+
+#exit syscall
+:exit
+SET  r4 0      #EXIT system call id
+PUSH r4        #push sys call id on stack
+TRAP           #exit the program
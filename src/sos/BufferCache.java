@@ -0,0 +1,590 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is the kernel's block buffer cache for a single disk.  It keeps
+ * recently used disk blocks in a fixed pool of frames so that reads and
+ * writes that hit the cache are served without a device request.
+ *
+ * The block data lives in one flat int[] (frame i holds words
+ * i*WORDS_PER_BLOCK to (i+1)*WORDS_PER_BLOCK-1) and the bookkeeping for the
+ * frames is kept in parallel primitive arrays.  Frames are evicted in least
+ * recently used order.  Writes only dirty the cached copy; dirty blocks are
+ * written back later, either by the flusher or when they are evicted.
+ *
+ * The cache only manages state.  The OS is responsible for issuing the
+ * device requests that fill frames ({@link #allocate}) and write back
+ * snapshots ({@link #takeWriteback}) and for telling the cache when they
+ * complete.
+ *
+ * @see SOS
+ * @see DiskDevice
+ */
+public class BufferCache
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the number of words in a block (same as the disk) */
+    public static final int BLOCK = DiskDevice.WORDS_PER_BLOCK;
+
+    //frame states
+    private static final int FREE    = 0;   // holds no block
+    private static final int FILLING = 1;   // a read from the disk is pending
+    private static final int VALID   = 2;   // holds a copy of its block
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Writeback
+     *
+     * a snapshot of a dirty block that is on its way to the disk
+     */
+    public static class Writeback
+    {
+        /** the block being written */
+        public int block;
+        /** the contents of the block when the write was started */
+        public int[] data;
+        /** the CPU tick when the block first became dirty */
+        public int dirtyTick;
+    }//class Writeback
+
+    /**
+     * class DirectWrite
+     *
+     * a range of words that is being written to the disk without going
+     * through the cache (a DMA write)
+     */
+    public static class DirectWrite
+    {
+        /** the disk address of data[0] */
+        public int addr;
+        /** the words being written */
+        public int[] data;
+    }//class DirectWrite
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private int m_numFrames;            // number of frames in the pool
+    private int[] m_pool;               // the cached block data
+    private int[] m_tag;                // the block held by each frame (-1 = none)
+    private int[] m_state;              // FREE, FILLING or VALID
+    private boolean[] m_dirty;          // has the frame been written since filled/flushed?
+    private int[] m_dirtyTick;          // when the frame became dirty
+    private int[] m_prev;               // LRU list: toward most recently used
+    private int[] m_next;               // LRU list: toward least recently used
+    private int m_mru = -1;             // most recently used frame
+    private int m_lru = -1;             // least recently used frame
+    private Object[] m_fill;            // the OS's fill request for each FILLING frame
+
+    /** maps a block number to the frame that holds it */
+    private HashMap<Integer, Integer> m_index = new HashMap<Integer, Integer>();
+
+    /** snapshots that have been handed out but not yet written */
+    private HashMap<Integer, Writeback> m_inFlight = new HashMap<Integer, Writeback>();
+
+    /** snapshots waiting for the OS to issue them */
+    private Vector<Writeback> m_toWrite = new Vector<Writeback>();
+
+    /** DMA writes that have not reached the disk yet */
+    private Vector<DirectWrite> m_direct = new Vector<DirectWrite>();
+
+    /** the previous block accessed (used to detect sequential access) */
+    private int m_lastBlock = -2;
+
+    //Statistics
+    private int m_hits = 0;
+    private int m_misses = 0;
+    private int m_readAheads = 0;
+    private int m_flushes = 0;
+    private long m_flushLatency = 0;    // total ticks from dirty to on disk
+    private int m_maxFlushLatency = 0;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param numFrames the number of blocks the cache can hold
+     */
+    public BufferCache(int numFrames)
+    {
+        m_numFrames = numFrames;
+        m_pool = new int[numFrames * BLOCK];
+        m_tag = new int[numFrames];
+        m_state = new int[numFrames];
+        m_dirty = new boolean[numFrames];
+        m_dirtyTick = new int[numFrames];
+        m_prev = new int[numFrames];
+        m_next = new int[numFrames];
+        m_fill = new Object[numFrames];
+
+        //Put every frame on the LRU list
+        for(int i = 0; i < numFrames; i++)
+        {
+            m_tag[i] = -1;
+            m_prev[i] = i - 1;
+            m_next[i] = (i + 1 < numFrames) ? i + 1 : -1;
+        }
+        m_mru = (numFrames > 0) ? 0 : -1;
+        m_lru = numFrames - 1;
+    }//ctor
+
+    /**
+     * getPool
+     *
+     * @return the array that holds the cached blocks.  Device reads that fill
+     *         a frame transfer directly into it at {@link #offsetOf}.
+     */
+    public int[] getPool()
+    {
+        return m_pool;
+    }
+
+    /**
+     * offsetOf
+     *
+     * @return the index in the pool of the first word of the given frame
+     */
+    public int offsetOf(int frame)
+    {
+        return frame * BLOCK;
+    }
+
+    /**
+     * lookup
+     *
+     * @param block a block number
+     * @return the frame holding (or filling) the block -OR- -1 if not cached
+     */
+    public int lookup(int block)
+    {
+        Integer frame = m_index.get(block);
+        return (frame == null) ? -1 : frame.intValue();
+    }//lookup
+
+    /**
+     * isFilling
+     *
+     * @return true if the frame is waiting for its block to arrive from disk
+     */
+    public boolean isFilling(int frame)
+    {
+        return m_state[frame] == FILLING;
+    }
+
+    /**
+     * getFillRequest / setFillRequest
+     *
+     * the OS attaches the request that is filling a frame so that later
+     * accesses to the same block can wait on it
+     */
+    public Object getFillRequest(int frame)
+    {
+        return m_fill[frame];
+    }
+
+    public void setFillRequest(int frame, Object req)
+    {
+        m_fill[frame] = req;
+    }
+
+    /**
+     * recordAccess
+     *
+     * records a hit or a miss for a process access and whether it continued
+     * a sequential run
+     *
+     * @param block the block accessed
+     * @param hit   true if the block was in the cache and valid
+     * @return true if the access immediately followed the previous block
+     *         (a hint to read ahead)
+     */
+    public boolean recordAccess(int block, boolean hit)
+    {
+        if (hit)
+        {
+            m_hits++;
+        }
+        else
+        {
+            m_misses++;
+        }
+
+        boolean sequential = (block == m_lastBlock + 1);
+        m_lastBlock = block;
+        return sequential;
+    }//recordAccess
+
+    /**
+     * read
+     *
+     * @param frame a VALID frame
+     * @param addr  a disk address within the frame's block
+     * @return the cached word
+     */
+    public int read(int frame, int addr)
+    {
+        touch(frame);
+        return m_pool[frame * BLOCK + (addr % BLOCK)];
+    }//read
+
+    /**
+     * write
+     *
+     * updates a cached word and marks the frame dirty
+     *
+     * @param frame a VALID frame
+     * @param addr  a disk address within the frame's block
+     * @param data  the new value
+     * @param now   the current CPU tick
+     */
+    public void write(int frame, int addr, int data, int now)
+    {
+        touch(frame);
+        m_pool[frame * BLOCK + (addr % BLOCK)] = data;
+        if (!m_dirty[frame])
+        {
+            m_dirty[frame] = true;
+            m_dirtyTick[frame] = now;
+        }
+    }//write
+
+    /**
+     * allocate
+     *
+     * claims a frame for a block that is not in the cache, evicting the least
+     * recently used frame that is not waiting for the disk.  If the evicted
+     * frame was dirty its contents are queued for write back.
+     *
+     * If the block is on its way to the disk the frame is filled from that
+     * snapshot and is immediately VALID.  Otherwise the frame is FILLING and
+     * the caller must read the block into it and then call
+     * {@link #fillComplete}.
+     *
+     * @param block the block to cache
+     * @param now   the current CPU tick
+     * @return the frame -OR- -1 if every frame is waiting for the disk
+     */
+    public int allocate(int block, int now)
+    {
+        //Find the least recently used frame that can be reused
+        int frame = m_lru;
+        while ((frame >= 0) && (m_state[frame] == FILLING))
+        {
+            frame = m_prev[frame];
+        }
+        if (frame < 0)
+        {
+            return -1;
+        }
+
+        //Evict its current block
+        if (m_state[frame] == VALID)
+        {
+            if (m_dirty[frame])
+            {
+                queueWriteback(frame);
+            }
+            m_index.remove(m_tag[frame]);
+        }
+
+        m_tag[frame] = block;
+        m_dirty[frame] = false;
+        m_fill[frame] = null;
+        m_index.put(block, frame);
+        touch(frame);
+
+        //A block that is still being written back is newer than the disk
+        Writeback wb = m_inFlight.get(block);
+        if (wb != null)
+        {
+            System.arraycopy(wb.data, 0, m_pool, frame * BLOCK, BLOCK);
+            m_state[frame] = VALID;
+        }
+        else
+        {
+            m_state[frame] = FILLING;
+        }
+
+        return frame;
+    }//allocate
+
+    /**
+     * fillComplete
+     *
+     * marks a FILLING frame as VALID after its block has been read into the
+     * pool
+     */
+    public void fillComplete(int frame)
+    {
+        m_state[frame] = VALID;
+        m_fill[frame] = null;
+
+        //The disk may have been read before a DMA write to this block landed
+        int start = m_tag[frame] * BLOCK;
+        for(DirectWrite dw : m_direct)
+        {
+            int from = Math.max(start, dw.addr);
+            int to = Math.min(start + BLOCK, dw.addr + dw.data.length);
+            for(int a = from; a < to; a++)
+            {
+                m_pool[frame * BLOCK + (a - start)] = dw.data[a - dw.addr];
+            }
+        }
+    }//fillComplete
+
+    /**
+     * recordReadAhead
+     *
+     * counts a frame allocated speculatively for a sequential run
+     */
+    public void recordReadAhead()
+    {
+        m_readAheads++;
+    }
+
+    /**
+     * flushDirty
+     *
+     * queues a write back for every dirty frame that has been dirty for at
+     * least the given number of ticks.  The frames become clean (they can be
+     * dirtied again while the write is in progress).
+     *
+     * @param now    the current CPU tick
+     * @param minAge only flush frames dirty for at least this many ticks
+     * @return the number of blocks queued
+     */
+    public int flushDirty(int now, int minAge)
+    {
+        int count = 0;
+        for(int i = 0; i < m_numFrames; i++)
+        {
+            if ((m_state[i] == VALID) && m_dirty[i] && (now - m_dirtyTick[i] >= minAge))
+            {
+                queueWriteback(i);
+                m_dirty[i] = false;
+                count++;
+            }
+        }
+        return count;
+    }//flushDirty
+
+    /**
+     * queueWriteback
+     *
+     * snapshots a dirty frame so that it can be written back while the frame
+     * continues to be used
+     */
+    private void queueWriteback(int frame)
+    {
+        Writeback wb = new Writeback();
+        wb.block = m_tag[frame];
+        wb.data = Arrays.copyOfRange(m_pool, frame * BLOCK, (frame + 1) * BLOCK);
+        wb.dirtyTick = m_dirtyTick[frame];
+        m_inFlight.put(wb.block, wb);
+        m_toWrite.add(wb);
+    }//queueWriteback
+
+    /**
+     * takeWriteback
+     *
+     * @return the next snapshot that needs to be written to the disk -OR-
+     *         null if there are none
+     */
+    public Writeback takeWriteback()
+    {
+        if (m_toWrite.isEmpty())
+        {
+            return null;
+        }
+        return m_toWrite.remove(0);
+    }//takeWriteback
+
+    /**
+     * writebackComplete
+     *
+     * records that a snapshot has reached the disk
+     *
+     * @param wb  the snapshot
+     * @param now the current CPU tick
+     */
+    public void writebackComplete(Writeback wb, int now)
+    {
+        if (m_inFlight.get(wb.block) == wb)
+        {
+            m_inFlight.remove(wb.block);
+        }
+
+        int latency = now - wb.dirtyTick;
+        m_flushes++;
+        m_flushLatency += latency;
+        if (latency > m_maxFlushLatency)
+        {
+            m_maxFlushLatency = latency;
+        }
+    }//writebackComplete
+
+    /**
+     * overlay
+     *
+     * copies the cached contents of any blocks that overlap the given disk
+     * range into a buffer that was just read from the disk without going
+     * through the cache, so that the buffer reflects writes that have not
+     * reached the disk yet
+     *
+     * @param addr the disk address of buf[off]
+     * @param buf  the buffer
+     * @param off  the offset of the range in buf
+     * @param len  the number of words in the range
+     */
+    public void overlay(int addr, int[] buf, int off, int len)
+    {
+        for(int a = addr; a < addr + len; a++)
+        {
+            int block = a / BLOCK;
+            int frame = lookup(block);
+            if ((frame >= 0) && (m_state[frame] == VALID))
+            {
+                buf[off + a - addr] = m_pool[frame * BLOCK + (a % BLOCK)];
+                continue;
+            }
+            Writeback wb = m_inFlight.get(block);
+            if (wb != null)
+            {
+                buf[off + a - addr] = wb.data[a % BLOCK];
+            }
+        }
+    }//overlay
+
+    /**
+     * startDirectWrite
+     *
+     * copies words that are about to be written straight to the disk into
+     * every cached copy of the blocks they belong to (including snapshots on
+     * their way to the disk) so the cache never hands out or writes back
+     * older data.  The OS must call {@link #directWriteComplete} once the
+     * write has reached the disk.
+     *
+     * @param addr the disk address of buf[off]
+     * @param buf  the buffer
+     * @param off  the offset of the range in buf
+     * @param len  the number of words in the range
+     * @return a handle for the write
+     */
+    public DirectWrite startDirectWrite(int addr, int[] buf, int off, int len)
+    {
+        for(int a = addr; a < addr + len; a++)
+        {
+            int block = a / BLOCK;
+            int frame = lookup(block);
+            if ((frame >= 0) && (m_state[frame] == VALID))
+            {
+                m_pool[frame * BLOCK + (a % BLOCK)] = buf[off + a - addr];
+            }
+            Writeback wb = m_inFlight.get(block);
+            if (wb != null)
+            {
+                wb.data[a % BLOCK] = buf[off + a - addr];
+            }
+        }
+
+        DirectWrite dw = new DirectWrite();
+        dw.addr = addr;
+        dw.data = Arrays.copyOfRange(buf, off, off + len);
+        m_direct.add(dw);
+        return dw;
+    }//startDirectWrite
+
+    /**
+     * directWriteComplete
+     *
+     * records that a DMA write has reached the disk
+     */
+    public void directWriteComplete(DirectWrite dw)
+    {
+        m_direct.remove(dw);
+    }
+
+    /**
+     * touch
+     *
+     * moves a frame to the most recently used end of the LRU list
+     */
+    private void touch(int frame)
+    {
+        if (frame == m_mru)
+        {
+            return;
+        }
+
+        //Unlink
+        if (m_prev[frame] >= 0)
+        {
+            m_next[m_prev[frame]] = m_next[frame];
+        }
+        if (m_next[frame] >= 0)
+        {
+            m_prev[m_next[frame]] = m_prev[frame];
+        }
+        if (frame == m_lru)
+        {
+            m_lru = m_prev[frame];
+        }
+
+        //Link at the front
+        m_prev[frame] = -1;
+        m_next[frame] = m_mru;
+        if (m_mru >= 0)
+        {
+            m_prev[m_mru] = frame;
+        }
+        m_mru = frame;
+    }//touch
+
+    /**
+     * getHitRatio
+     *
+     * @return the fraction of process accesses that hit the cache
+     */
+    public double getHitRatio()
+    {
+        int total = m_hits + m_misses;
+        return (total == 0) ? 0.0 : (double)m_hits / total;
+    }//getHitRatio
+
+    /**
+     * getAverageFlushLatency
+     *
+     * @return the average number of ticks between a block becoming dirty and
+     *         reaching the disk
+     */
+    public double getAverageFlushLatency()
+    {
+        return (m_flushes == 0) ? 0.0 : (double)m_flushLatency / m_flushes;
+    }//getAverageFlushLatency
+
+    /**
+     * toString
+     *
+     * @return a summary of the cache statistics
+     */
+    public String toString()
+    {
+        return m_hits + " hits, " + m_misses + " misses"
+            + " (hit ratio " + String.format("%.2f", getHitRatio()) + "), "
+            + m_readAheads + " read-aheads, " + m_flushes + " write-backs"
+            + " (avg latency " + String.format("%.1f", getAverageFlushLatency())
+            + " max " + m_maxFlushLatency + " ticks)";
+    }//toString
+
+};//class BufferCache
@@ -41,6 +41,7 @@ public class CPU implements Runnable {
 	public static final int PUSH = 10; // save value to stack
 	public static final int LOAD = 11; // load value from heap
 	public static final int SAVE = 12; // save value to heap
+	public static final int CAS = 13; // if @reg3 == reg1 then @reg3 = reg2; reg1 = old @reg3
 	public static final int TRAP = 15; // system call
 
 	// These constants define the indexes to each register
@@ -53,7 +54,9 @@ public class CPU implements Runnable {
 	public static final int SP = 6; // stack pointer
 	public static final int BASE = 7; // bottom of currently accessible RAM
 	public static final int LIM = 8; // top of accessible RAM
-	public static final int NUMREG = 9; // number of registers
+	public static final int SBASE = 9; // bottom of the attached shared segment
+	public static final int SLIM = 10; // top of the attached shared segment
+	public static final int NUMREG = 11; // number of registers
 
 	// Misc constants
 	public static final int NUMGENREG = PC; // the number of general registers
@@ -61,6 +64,8 @@ public class CPU implements Runnable {
 										  // args. (Set to a fixed value for simplicity.)
     public static final int CLOCK_FREQ = 5; /*defines how many CPU cycles elapse 
     										between clock interrupts*/
+	public static final int SHM_ADDR = 100000; // addresses from here on are in the
+											  // shared segment (SBASE..SLIM)
     
 
 	// ======================================================================
@@ -216,6 +221,34 @@ public class CPU implements Runnable {
 		m_registers[LIM] = v;
 	}
 
+	/**
+	 * getSBASE / getSLIM
+	 * 
+	 * @return the bounds of the shared segment the process has attached (equal
+	 *         if it has none)
+	 */
+	public int getSBASE() {
+		return m_registers[SBASE];
+	}
+
+	public int getSLIM() {
+		return m_registers[SLIM];
+	}
+
+	/**
+	 * setSBASE / setSLIM
+	 * 
+	 * @param v
+	 *            the new bound of the shared segment
+	 */
+	public void setSBASE(int v) {
+		m_registers[SBASE] = v;
+	}
+
+	public void setSLIM(int v) {
+		m_registers[SLIM] = v;
+	}
+
 	/**
 	 * regDump
 	 * 
@@ -229,6 +262,10 @@ public class CPU implements Runnable {
 		System.out.print("SP=" + m_registers[SP] + " ");
 		System.out.print("BASE=" + m_registers[BASE] + " ");
 		System.out.print("LIM=" + m_registers[LIM] + " ");
+		if (m_registers[SLIM] > m_registers[SBASE]) {
+			System.out.print("SBASE=" + m_registers[SBASE] + " ");
+			System.out.print("SLIM=" + m_registers[SLIM] + " ");
+		}
 		System.out.println("");
 	}// regDump
 
@@ -236,7 +273,8 @@ public class CPU implements Runnable {
 	 * checkForIOInterrupt
 	 *
 	 * Checks the databus for signals from the interrupt controller and, if
-	 * found, invokes the appropriate handler in the operating system.
+	 * found, invokes the appropriate handler in the operating system.  The
+	 * oldest interrupt of the highest priority device is taken first.
 	 *
 	 */
 	private void checkForIOInterrupt()
@@ -247,8 +285,12 @@ public class CPU implements Runnable {
 			return;
 		}
 
-		//Retreive the interrupt data
-		int[] intData = m_IC.getData();
+		//Retreive the interrupt data (null if every pending line is masked)
+		int[] intData = m_IC.take();
+		if (intData == null)
+		{
+			return;
+		}
 
 		//Report the data if in verbose mode
 		if (m_verbose)
@@ -331,6 +373,10 @@ public class CPU implements Runnable {
 		case SAVE:
 			System.out.println("SAVE R" + instr[1] + " --> @R" + instr[2]);
 			break;
+		case CAS:
+			System.out.println("CAS (@R" + instr[3] + " == R" + instr[1]
+					+ ") @R" + instr[3] + " = R" + instr[2]);
+			break;
 		case TRAP:
 			System.out.print("TRAP ");
 			break;
@@ -435,19 +481,31 @@ public class CPU implements Runnable {
 				break;
 
 			case LOAD:
-				if (checkAccess((instruction[2] + getBASE()))) {
-					m_registers[instruction[1]] = m_RAM.read(instruction[2]
-							+ getBASE());
+				if (checkAccess(m_registers[instruction[2]])) {
+					m_registers[instruction[1]] = m_RAM.read(physical(m_registers[instruction[2]]));
 				}
 				break;
 
 			case SAVE:
-				if (checkAccess((instruction[2] + getBASE()))) {
-					m_RAM.write(m_registers[instruction[2]] + getBASE(),
+				if (checkAccess(m_registers[instruction[2]])) {
+					m_RAM.write(physical(m_registers[instruction[2]]),
 							m_registers[instruction[1]]);
 				}
 				break;
 
+			case CAS:
+				// compare and swap in one instruction so that no interrupt
+				// can come between the test and the store
+				if (checkAccess(m_registers[instruction[3]])) {
+					int addr = physical(m_registers[instruction[3]]);
+					int old = m_RAM.read(addr);
+					if (old == m_registers[instruction[1]]) {
+						m_RAM.write(addr, m_registers[instruction[2]]);
+					}
+					m_registers[instruction[1]] = old;
+				}
+				break;
+
 			case TRAP:
 				m_TH.systemCall();
 				break;
@@ -478,10 +536,24 @@ public class CPU implements Runnable {
 	 * 
 	 *            Helper method to check if process is attempting to access a
 	 *            register that is less than the base register or greater than
-	 *            the limit register
+	 *            the limit register.  Addresses from SHM_ADDR on must fall
+	 *            inside the attached shared segment instead.
 	 */
 
 	private boolean checkAccess(int register) {
+		if (register >= SHM_ADDR) {
+			if (getSBASE() + (register - SHM_ADDR) >= getSLIM()) {
+				if (m_verbose)
+				{
+					System.out
+					.println("Attempting to access register that is outside" +
+							" the shared segment");
+				}
+				m_TH.interruptIllegalMemoryAccess(register);
+				return false;
+			}
+			return true;
+		}
 		if ((register + getBASE()) < getBASE()) {
 			if (m_verbose)
 			{
@@ -560,6 +632,36 @@ public class CPU implements Runnable {
 		return toReturn;
 	}
 
+	/**
+	 * translate
+	 * 
+	 * @param addr
+	 *            an address in the process' address space
+	 * @return the RAM address it refers to -OR- -1 if the process may not
+	 *         access it
+	 */
+	public int translate(int addr) {
+		if (addr >= SHM_ADDR) {
+			return (getSBASE() + (addr - SHM_ADDR) < getSLIM()) ? physical(addr) : -1;
+		}
+		return ((addr >= 0) && (getBASE() + addr < getLIM())) ? physical(addr) : -1;
+	}
+
+	/**
+	 * physical
+	 * 
+	 * @param addr
+	 *            an address in the process' address space
+	 * @return the RAM address it refers to (in the process' own memory or in
+	 *         its shared segment)
+	 */
+	private int physical(int addr) {
+		if (addr >= SHM_ADDR) {
+			return getSBASE() + addr - SHM_ADDR;
+		}
+		return getBASE() + addr;
+	}
+
 	private int offset(int relLoc) {
 		return relLoc + getBASE() - INSTRSIZE;
 	}
@@ -576,6 +678,15 @@ public class CPU implements Runnable {
 		m_ticks = m_ticks + saveLoadTime;
 	}
 
+	/**
+	 * getInterruptController
+	 * 
+	 * @return the interrupt controller attached to this CPU
+	 */
+	public InterruptController getInterruptController() {
+		return m_IC;
+	}
+
 	/**
 	 * getTicks
 	 * 
@@ -3,22 +3,31 @@ package sos;
 import java.util.*;
 
 /**
- * This class simulates a simple, sharable write-only device.  
+ * This class simulates a simple, sharable write-only device.  The values
+ * written to the console are handed to a {@link ConsoleSink}, which by
+ * default prints each one to System.out.
  *
  * @see Sim
  * @see CPU
  * @see SOS
  * @see Device
+ * @see DMADevice
+ * @see ConsoleSink
  */
-public class ConsoleDevice implements Device, Runnable
+public class ConsoleDevice implements DMADevice, Runnable
 {
     private int m_maxLatency = 1000;   // maximum latency in ns
     private int m_minLatency = 500;    // minimum latnecy in ns
     private int m_Id = -999;           // the OS assigned device ID
-    private boolean m_request = false; // is the device currently processing a request?
+    private volatile boolean m_request = false; // is the device currently processing a request?
     private int m_addr = 0;            // address to write to
     private int m_data = 0;            // data associated with the current request
+    private int[] m_bulkBuf = null;    // buffer for the current bulk request (if any)
+    private int m_bulkOff = 0;         // offset of the transfer in m_bulkBuf
+    private int m_bulkLen = 0;         // number of words in the bulk request
     private InterruptController m_IC;  // reference to the interrupt controller
+    private RequestSignal m_signal = new RequestSignal(); // rung when a request arrives
+    private volatile ConsoleSink m_sink = new ConsoleSink.PrintSink(); // where the output goes
 
     /**
      * This constructor uses the default values for latency)
@@ -137,7 +146,82 @@ public class ConsoleDevice implements Device, Runnable
     {
         m_addr = addr;
         m_data = data;
+        m_bulkBuf = null;
         m_request = true;
+        m_signal.signal();
+    }
+
+    /**
+     * readBulk
+     *
+     * not implemented
+     */
+    public void readBulk(int addr, int[] dst, int off, int len)
+    {
+        //This method should never be called
+    }
+
+    /**
+     * writeBulk
+     *
+     * records a request to print a range of words.  The whole range is
+     * printed before the single completion interrupt is raised.
+     */
+    public void writeBulk(int addr /*not used*/, int[] src, int off, int len)
+    {
+        m_addr = addr;
+        m_bulkBuf = src;
+        m_bulkOff = off;
+        m_bulkLen = len;
+        m_request = true;
+        m_signal.signal();
+    }//writeBulk
+
+    /**
+     * setSpinCount
+     *
+     * sets how long the device thread spins looking for a new request before
+     * it parks (0 = park immediately)
+     *
+     * @param spinCount the number of spin iterations
+     * @see RequestSignal
+     */
+    public void setSpinCount(int spinCount)
+    {
+        m_signal.setSpinCount(spinCount);
+    }
+    
+    /**
+     * setSink
+     *
+     * selects where the console's output goes.  Should be called before the
+     * device is started.
+     *
+     * @param sink the new sink
+     */
+    public void setSink(ConsoleSink sink)
+    {
+        m_sink = sink;
+    }
+
+    /**
+     * getSink
+     *
+     * @return where the console's output goes
+     */
+    public ConsoleSink getSink()
+    {
+        return m_sink;
+    }
+
+    /**
+     * flush
+     *
+     * pushes any output the sink is holding to its destination
+     */
+    public void flush()
+    {
+        m_sink.flush();
     }
     
     /**
@@ -157,10 +241,19 @@ public class ConsoleDevice implements Device, Runnable
         //Device runs until program ends
         while(true)
         {
-            //While there is no request to process, yield the CPU to another thread
+            //While there is no request to process, wait for the OS to signal
+            //one.  If the sink is holding output, wake up in time to flush it.
             while (!m_request)
             {
-                Thread.yield();
+                long delay = m_sink.flushDelay();
+                if (delay < 0)
+                {
+                    m_signal.await();
+                }
+                else if ((delay == 0) || !m_signal.awaitNanos(delay))
+                {
+                    m_sink.flush();
+                }
             }
 
             //We've received a request.  Sleep to simulate the latency
@@ -173,13 +266,27 @@ public class ConsoleDevice implements Device, Runnable
             catch(InterruptedException e) {} // should never happen
             
             //print the data
-            System.out.println("\nCONSOLE: " + m_data);
-
-            //Notify the CPU of completed operation
-            m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, m_addr, -999);
+            if (m_bulkBuf != null)
+            {
+                for(int i = 0; i < m_bulkLen; i++)
+                {
+                    m_sink.write(m_bulkBuf[m_bulkOff + i]);
+                }
+                m_bulkBuf = null;
+            }
+            else
+            {
+                m_sink.write(m_data);
+            }
 
-            //Make the device available for another request
+            //Make the device available for another request before raising
+            //the interrupt so the OS can issue the next request from its
+            //interrupt handler
+            int addr = m_addr;
             m_request = false;
+
+            //Notify the CPU of completed operation
+            m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, addr, -999);
         }//while
     }//run
 
@@ -0,0 +1,321 @@
+package sos;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This interface defines where a {@link ConsoleDevice} sends the values that
+ * are written to it.  Several sinks are provided:
+ *
+ * <ul>
+ * <li>PrintSink    - prints each value to System.out as soon as it arrives
+ *                    (the original console behavior)</li>
+ * <li>BufferedSink - collects the output in memory and writes it to a stream
+ *                    when enough has been collected or it has been waiting
+ *                    too long</li>
+ * <li>MappedFileSink - appends the output to a memory-mapped log file</li>
+ * <li>DiscardSink  - throws the output away (for benchmarks)</li>
+ * <li>CallbackSink - hands each value to a callback (for tests)</li>
+ * </ul>
+ *
+ * A sink is only written to by its console's device thread but may be
+ * flushed or closed from other threads.
+ *
+ * @see ConsoleDevice
+ */
+public interface ConsoleSink
+{
+    /**
+     * write
+     *
+     * outputs a single value written to the console
+     */
+    public void write(int data);
+
+    /**
+     * flush
+     *
+     * pushes any buffered output to its destination
+     */
+    public void flush();
+
+    /**
+     * flushDelay
+     *
+     * @return the number of nanoseconds until buffered output must be
+     *         flushed (0 = now) -OR- -1 if nothing is waiting
+     */
+    public long flushDelay();
+
+    /**
+     * close
+     *
+     * flushes the sink and releases its resources.  Nothing may be written
+     * to the sink afterwards.
+     */
+    public void close();
+
+    //======================================================================
+    // Implementations
+    //----------------------------------------------------------------------
+
+    /**
+     * class PrintSink
+     *
+     * prints every value on its own line as soon as it is written
+     */
+    public static class PrintSink implements ConsoleSink
+    {
+        public void write(int data)
+        {
+            System.out.println("\nCONSOLE: " + data);
+        }
+
+        public void flush() { }
+
+        public long flushDelay()
+        {
+            return -1;
+        }
+
+        public void close() { }
+    }//class PrintSink
+
+    /**
+     * class BufferedSink
+     *
+     * coalesces the output in memory and writes it to a stream in large
+     * chunks.  The buffer is written when it holds at least maxChars
+     * characters or when its oldest line has waited maxDelay nanoseconds.
+     */
+    public static class BufferedSink implements ConsoleSink
+    {
+        /** the default flush thresholds */
+        public static final int DEFAULT_MAX_CHARS = 8192;
+        public static final long DEFAULT_MAX_DELAY = 50000000L; // 50 ms
+
+        private OutputStream m_out;             // where the output goes
+        private StringBuilder m_buf = new StringBuilder(); // output not yet written
+        private int m_maxChars;                 // flush once this much is buffered
+        private long m_maxDelay;                // flush once output is this old (ns)
+        private long m_firstWrite = 0;          // when the buffer became non-empty
+
+        /**
+         * This constructor writes to System.out with the default thresholds
+         */
+        public BufferedSink()
+        {
+            this(new FileOutputStream(FileDescriptor.out),
+                 DEFAULT_MAX_CHARS, DEFAULT_MAX_DELAY);
+        }
+
+        /**
+         * This constructor expects the stream to write to and the size (in
+         * characters) and age (in nanoseconds) thresholds for flushing
+         */
+        public BufferedSink(OutputStream out, int maxChars, long maxDelay)
+        {
+            m_out = out;
+            m_maxChars = Math.max(1, maxChars);
+            m_maxDelay = Math.max(0, maxDelay);
+        }//ctor
+
+        public synchronized void write(int data)
+        {
+            if (m_buf.length() == 0)
+            {
+                m_firstWrite = System.nanoTime();
+            }
+            m_buf.append("\nCONSOLE: ").append(data).append('\n');
+            if (m_buf.length() >= m_maxChars)
+            {
+                flush();
+            }
+        }//write
+
+        public synchronized void flush()
+        {
+            if (m_buf.length() == 0)
+            {
+                return;
+            }
+            try
+            {
+                m_out.write(m_buf.toString().getBytes(StandardCharsets.UTF_8));
+                m_out.flush();
+            }
+            catch(IOException e)
+            {
+                System.out.println("CONSOLE ERROR: " + e);
+            }
+            m_buf.setLength(0);
+        }//flush
+
+        public synchronized long flushDelay()
+        {
+            if (m_buf.length() == 0)
+            {
+                return -1;
+            }
+            return Math.max(0, m_firstWrite + m_maxDelay - System.nanoTime());
+        }//flushDelay
+
+        public void close()
+        {
+            flush();
+        }
+    }//class BufferedSink
+
+    /**
+     * class MappedFileSink
+     *
+     * appends the output to a log file through a memory mapping so that each
+     * write is a copy into the page cache.  The file is mapped in chunks of
+     * CHUNK_SIZE bytes and trimmed to the length of the output when the sink
+     * is closed.
+     */
+    public static class MappedFileSink implements ConsoleSink
+    {
+        /** the number of bytes mapped at a time */
+        public static final int CHUNK_SIZE = 1 << 20;
+
+        private RandomAccessFile m_file = null; // the log file
+        private FileChannel m_channel = null;   // its channel
+        private MappedByteBuffer m_map = null;  // the chunk being filled
+        private long m_mapStart = 0;            // the file offset of m_map
+        private boolean m_closed = false;
+
+        /**
+         * This constructor creates (or truncates) the log file
+         */
+        public MappedFileSink(String fileName) throws IOException
+        {
+            m_file = new RandomAccessFile(fileName, "rw");
+            m_file.setLength(0);
+            m_channel = m_file.getChannel();
+            m_map = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+        }//ctor
+
+        public synchronized void write(int data)
+        {
+            if (m_closed)
+            {
+                return;
+            }
+            byte[] line = ("CONSOLE: " + data + "\n").getBytes(StandardCharsets.UTF_8);
+            try
+            {
+                if (m_map.remaining() < line.length)
+                {
+                    //Map the next chunk
+                    m_mapStart += m_map.position();
+                    m_map = m_channel.map(FileChannel.MapMode.READ_WRITE,
+                                          m_mapStart, CHUNK_SIZE);
+                }
+                m_map.put(line);
+            }
+            catch(IOException e)
+            {
+                System.out.println("CONSOLE ERROR: " + e);
+            }
+        }//write
+
+        public synchronized void flush()
+        {
+            if (!m_closed)
+            {
+                m_map.force();
+            }
+        }//flush
+
+        public long flushDelay()
+        {
+            return -1;          // the page cache does the buffering
+        }
+
+        public synchronized void close()
+        {
+            if (m_closed)
+            {
+                return;
+            }
+            m_closed = true;
+            try
+            {
+                m_map.force();
+                long length = m_mapStart + m_map.position();
+                m_map = null;
+                m_channel.truncate(length);
+                m_channel.close();
+                m_file.close();
+            }
+            catch(IOException e)
+            {
+                System.out.println("CONSOLE ERROR: " + e);
+            }
+        }//close
+    }//class MappedFileSink
+
+    /**
+     * class DiscardSink
+     *
+     * throws away the output but counts how many values were written
+     */
+    public static class DiscardSink implements ConsoleSink
+    {
+        private volatile long m_count = 0;
+
+        public void write(int data)
+        {
+            m_count++;
+        }
+
+        public long getCount()
+        {
+            return m_count;
+        }
+
+        public void flush() { }
+
+        public long flushDelay()
+        {
+            return -1;
+        }
+
+        public void close() { }
+    }//class DiscardSink
+
+    /**
+     * class CallbackSink
+     *
+     * hands each value to a callback on the console's device thread
+     */
+    public static class CallbackSink implements ConsoleSink
+    {
+        private IntConsumer m_callback;
+
+        public CallbackSink(IntConsumer callback)
+        {
+            m_callback = callback;
+        }
+
+        public void write(int data)
+        {
+            m_callback.accept(data);
+        }
+
+        public void flush() { }
+
+        public long flushDelay()
+        {
+            return -1;
+        }
+
+        public void close() { }
+    }//class CallbackSink
+
+};//interface ConsoleSink
@@ -0,0 +1,44 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This interface is implemented by devices that can transfer a whole range
+ * of words in a single request (direct memory access).  The OS hands the
+ * device a buffer and the device moves the data into or out of it and then
+ * raises a single completion interrupt for the whole range.
+ *
+ * @see Device
+ * @see SOS
+ */
+public interface DMADevice extends Device
+{
+    /**
+     * readBulk
+     *
+     * records a request to read a range of words from the device into the
+     * given buffer.  A single INT_READ_DONE interrupt is raised when the whole
+     * range has been transferred.
+     *
+     * @param addr the first device address to read
+     * @param dst  the buffer to fill
+     * @param off  where in dst to put the first word
+     * @param len  the number of words to read
+     */
+    public void readBulk(int addr, int[] dst, int off, int len);
+
+    /**
+     * writeBulk
+     *
+     * records a request to write a range of words from the given buffer to
+     * the device.  A single INT_WRITE_DONE interrupt is raised when the whole
+     * range has been transferred.  The buffer must not be modified until then.
+     *
+     * @param addr the first device address to write
+     * @param src  the buffer to copy from
+     * @param off  where in src the first word is
+     * @param len  the number of words to write
+     */
+    public void writeBulk(int addr, int[] src, int off, int len);
+
+};//interface DMADevice
@@ -0,0 +1,318 @@
+package sos;
+
+import java.util.*;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is the registry and runtime for the simulated devices attached to
+ * a machine (consoles, keyboards and disks).  It assigns each device a unique
+ * id, registers the devices with the OS and starts one thread per device.
+ *
+ * When the host JVM supports virtual threads (Java 21+) each device runs on
+ * its own virtual thread so that a simulation can attach thousands of
+ * devices.  An idle device parks on its {@link RequestSignal}, which releases
+ * the carrier thread, so only devices that are actually servicing a request
+ * occupy a host core.  On older JVMs the runtime falls back to one platform
+ * thread per device.
+ *
+ * Devices still deliver their completions through the
+ * {@link InterruptController} given to the runtime.
+ *
+ * @see Device
+ * @see Sim
+ */
+public class DeviceRuntime
+{
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /**
+     * the interrupt controller that every device in this runtime signals
+     */
+    private InterruptController m_IC = null;
+
+    /**
+     * all the registered devices indexed by device id
+     */
+    private Vector<Device> m_devices = new Vector<Device>();
+
+    /**
+     * the threads running the devices (one per device once started)
+     */
+    private Vector<Thread> m_threads = new Vector<Thread>();
+
+    /**
+     * creates the threads that the devices run on
+     */
+    private ThreadFactory m_factory = null;
+
+    /**
+     * true if m_factory creates virtual threads
+     */
+    private boolean m_virtual = false;
+
+    /**
+     * handler installed on every device thread (may be null)
+     */
+    private Thread.UncaughtExceptionHandler m_handler = null;
+
+    /**
+     * how long device threads spin before parking.  Spinning only pays off
+     * when each device owns a host core so it is disabled for virtual threads.
+     */
+    private int m_spinCount = RequestSignal.DEFAULT_SPIN_COUNT;
+
+    /**
+     * set once {@link #start} has been called
+     */
+    private boolean m_started = false;
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * This constructor runs devices on virtual threads if the JVM supports
+     * them and on platform threads otherwise
+     */
+    public DeviceRuntime(InterruptController ic)
+    {
+        m_IC = ic;
+        m_factory = virtualThreadFactory();
+        m_virtual = (m_factory != null);
+        if (m_virtual)
+        {
+            m_spinCount = 0;
+        }
+        else
+        {
+            m_factory = new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    return new Thread(r);
+                }
+            };
+        }
+    }//ctor
+
+    /**
+     * This constructor runs devices on threads created by the given factory
+     */
+    public DeviceRuntime(InterruptController ic, ThreadFactory factory)
+    {
+        m_IC = ic;
+        m_factory = factory;
+    }//ctor
+
+    /**
+     * virtualThreadFactory
+     *
+     * looks up Thread.ofVirtual().factory() reflectively so this class still
+     * compiles and runs on JVMs that predate virtual threads.
+     *
+     * @return a factory for virtual threads -OR- null if not supported
+     */
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        }
+        catch(Exception e)
+        {
+            return null;        // not available on this JVM
+        }
+    }//virtualThreadFactory
+
+    /**
+     * usesVirtualThreads
+     *
+     * @return true if the devices run on virtual threads
+     */
+    public boolean usesVirtualThreads()
+    {
+        return m_virtual;
+    }
+
+    /**
+     * setUncaughtExceptionHandler
+     *
+     * sets the handler installed on every device thread
+     */
+    public void setUncaughtExceptionHandler(Thread.UncaughtExceptionHandler h)
+    {
+        m_handler = h;
+    }
+
+    /**
+     * setSpinCount
+     *
+     * sets how long the console and keyboard devices created by this runtime
+     * spin before parking.  Must be called before the devices are added.
+     *
+     * @param spinCount the number of spin iterations (0 = park immediately)
+     */
+    public void setSpinCount(int spinCount)
+    {
+        m_spinCount = Math.max(0, spinCount);
+    }
+
+    /**
+     * addConsole
+     *
+     * creates a console device with its own latency range and registers it
+     *
+     * @param min the minimum latency in ns
+     * @param max the maximum latency in ns
+     * @return the new device (its id has been assigned)
+     */
+    public ConsoleDevice addConsole(int min, int max)
+    {
+        ConsoleDevice cd = new ConsoleDevice(m_IC, min, max);
+        cd.setSpinCount(m_spinCount);
+        add(cd);
+        return cd;
+    }//addConsole
+
+    /**
+     * addKeyboard
+     *
+     * creates a keyboard device with its own latency range and registers it
+     *
+     * @param min the minimum latency in ns
+     * @param max the maximum latency in ns
+     * @return the new device (its id has been assigned)
+     */
+    public KeyboardDevice addKeyboard(int min, int max)
+    {
+        KeyboardDevice kd = new KeyboardDevice(m_IC, min, max);
+        kd.setSpinCount(m_spinCount);
+        add(kd);
+        return kd;
+    }//addKeyboard
+
+    /**
+     * addDisk
+     *
+     * creates a disk device backed by the given file and registers it
+     *
+     * @param fileName  the file that holds the disk's contents
+     * @param numBlocks the size of the disk in blocks
+     * @return the new device (its id has been assigned)
+     */
+    public DiskDevice addDisk(String fileName, int numBlocks) throws IOException
+    {
+        DiskDevice dd = new DiskDevice(m_IC, fileName, numBlocks);
+        dd.setSpinCount(m_spinCount);
+        add(dd);
+        return dd;
+    }//addDisk
+
+    /**
+     * add
+     *
+     * registers a device with this runtime and assigns it the next device id.
+     * Devices are numbered in the order they are added starting at 0.  If the
+     * runtime has already been started the device is started immediately.
+     *
+     * @param dev the device.  It must also implement Runnable.
+     * @return the id assigned to the device
+     */
+    public synchronized int add(Device dev)
+    {
+        if (!(dev instanceof Runnable))
+        {
+            throw new IllegalArgumentException("device must implement Runnable");
+        }
+
+        int id = m_devices.size();
+        dev.setId(id);
+        m_devices.add(dev);
+        if (m_started)
+        {
+            startDevice(dev);
+        }
+
+        return id;
+    }//add
+
+    /**
+     * getDevice
+     *
+     * @param id a device id
+     * @return the device with the given id -OR- null if there is none
+     */
+    public synchronized Device getDevice(int id)
+    {
+        if ((id < 0) || (id >= m_devices.size()))
+        {
+            return null;
+        }
+        return m_devices.get(id);
+    }//getDevice
+
+    /**
+     * getDeviceCount
+     *
+     * @return the number of registered devices
+     */
+    public synchronized int getDeviceCount()
+    {
+        return m_devices.size();
+    }
+
+    /**
+     * registerWith
+     *
+     * registers every device in this runtime with the given OS using the
+     * device's id
+     *
+     * @param os the operating system
+     */
+    public synchronized void registerWith(SOS os)
+    {
+        for(Device dev : m_devices)
+        {
+            os.registerDevice(dev, dev.getId());
+        }
+    }//registerWith
+
+    /**
+     * start
+     *
+     * starts a thread for every registered device
+     */
+    public synchronized void start()
+    {
+        if (m_started)
+        {
+            return;
+        }
+        m_started = true;
+        for(Device dev : m_devices)
+        {
+            startDevice(dev);
+        }
+    }//start
+
+    /**
+     * startDevice
+     *
+     * starts a single device on a new thread
+     */
+    private void startDevice(Device dev)
+    {
+        Thread t = m_factory.newThread((Runnable)dev);
+        if (m_handler != null)
+        {
+            t.setUncaughtExceptionHandler(m_handler);
+        }
+        m_threads.add(t);
+        t.start();
+    }//startDevice
+
+};//class DeviceRuntime
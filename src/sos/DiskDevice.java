@@ -0,0 +1,531 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class simulates a sharable read/write block device (a disk drive).  The
+ * contents of the disk are kept in a local file that is accessed with
+ * positional I/O so the disk survives between simulations.
+ *
+ * The disk is addressed in words.  Words are grouped into blocks of
+ * {@link #WORDS_PER_BLOCK} and the latency of a request depends on how far
+ * the head has to travel from the block it is currently over: a fixed settle
+ * time plus a per-block seek cost, followed by a random rotational delay of
+ * up to one full rotation.  Bulk requests ({@link #readBulk},
+ * {@link #writeBulk}) move a contiguous range of words with one positional
+ * I/O call and one interrupt, paying a transfer cost for each extra block.
+ *
+ * @see Sim
+ * @see CPU
+ * @see SOS
+ * @see Device
+ * @see DMADevice
+ */
+public class DiskDevice implements DMADevice, Runnable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the number of words in a single disk block */
+    public static final int WORDS_PER_BLOCK = 64;
+
+    /** the number of bytes used to store one word in the backing file */
+    public static final int BYTES_PER_WORD = 4;
+
+    //request types
+    private static final int OP_READ       = 0;
+    private static final int OP_WRITE      = 1;
+    private static final int OP_READ_BULK  = 2;
+    private static final int OP_WRITE_BULK = 3;
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+    private int m_Id = -999;           // the OS assigned device ID
+    private volatile boolean m_request = false; // is the device currently processing a request?
+    private int m_op = OP_READ;        // the type of the current request
+    private int m_addr = 0;            // address to read from/write to
+    private int m_data = 0;            // data associated with the current request
+    private int[] m_bulkBuf = null;    // buffer for the current bulk request
+    private int m_bulkOff = 0;         // offset of the transfer in m_bulkBuf
+    private int m_bulkLen = 0;         // number of words in the bulk request
+    private InterruptController m_IC;  // reference to the interrupt controller
+    private RequestSignal m_signal = new RequestSignal(); // rung when a request arrives
+
+    private RandomAccessFile m_file = null; // the backing file
+    private FileChannel m_channel = null;   // channel used for positional I/O
+    private ByteBuffer m_buf = ByteBuffer.allocate(BYTES_PER_WORD); // one word
+    private int m_numBlocks = 0;       // the size of the disk in blocks
+    private volatile int m_headBlock = 0; // the block the head is currently over
+
+    private int m_settleLatency = 2000;  // time to start/stop the arm in ns
+    private int m_seekLatency = 100;     // time to move the arm one block in ns
+    private int m_rotationLatency = 4000; // time for one full rotation in ns
+    private int m_transferLatency = 500;  // time to transfer each extra block in ns
+
+    /**
+     * This constructor uses the default values for latency
+     *
+     * @param ic        the interrupt controller
+     * @param fileName  the file that holds the disk's contents (created if it
+     *                  does not exist)
+     * @param numBlocks the size of the disk in blocks
+     */
+    public DiskDevice(InterruptController ic, String fileName, int numBlocks)
+        throws IOException
+    {
+        m_IC = ic;
+        m_numBlocks = numBlocks;
+        m_file = new RandomAccessFile(fileName, "rw");
+        m_file.setLength((long)numBlocks * WORDS_PER_BLOCK * BYTES_PER_WORD);
+        m_channel = m_file.getChannel();
+    }//ctor
+
+    /**
+     * This constructor expects values for the latency model of this device
+     * expressed as a number of nanoseconds
+     *
+     * @param ic        the interrupt controller
+     * @param fileName  the file that holds the disk's contents
+     * @param numBlocks the size of the disk in blocks
+     * @param settle    the fixed cost of any seek
+     * @param perBlock  the cost of moving the head one block
+     * @param rotation  the time for one full rotation
+     */
+    public DiskDevice(InterruptController ic, String fileName, int numBlocks,
+                      int settle, int perBlock, int rotation)
+        throws IOException
+    {
+        this(ic, fileName, numBlocks);
+        m_settleLatency = Math.max(0, settle);
+        m_seekLatency = Math.max(0, perBlock);
+        m_rotationLatency = Math.max(0, rotation);
+    }//ctor
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * A disk can be used simultaneously by multiple processes
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * this device is available if no requests are currently being processed
+     */
+    public boolean isAvailable()
+    {
+        return !m_request;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return whether this device can be read from (true/false)
+     */
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return whether this device can be written to (true/false)
+     */
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    /**
+     * getNumBlocks
+     *
+     * @return the size of the disk in blocks
+     */
+    public int getNumBlocks()
+    {
+        return m_numBlocks;
+    }
+
+    /**
+     * getCapacity
+     *
+     * @return the size of the disk in words
+     */
+    public int getCapacity()
+    {
+        return m_numBlocks * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * getHeadBlock
+     *
+     * @return the block that the head is currently positioned over
+     */
+    public int getHeadBlock()
+    {
+        return m_headBlock;
+    }
+
+    /**
+     * blockOf
+     *
+     * @param addr a word address on the disk
+     * @return the block that contains the given address
+     */
+    public static int blockOf(int addr)
+    {
+        return addr / WORDS_PER_BLOCK;
+    }
+
+    /**
+     * read
+     *
+     * method records a request for service from the device and as such is
+     * analagous to setting a value in a register on the device's controller.
+     */
+    public int read(int addr)
+    {
+        m_op = OP_READ;
+        m_addr = addr;
+        m_request = true;
+        m_signal.signal();
+
+        return -9999;           // data arrives with the interrupt
+    }//read
+
+    /**
+     * write
+     *
+     * method records a request for service from the device and as such is
+     * analagous to setting a value in a register on the device's controller.
+     * As a result, the function does not check to make sure that the
+     * device is ready for this request (that's the OS's job).
+     */
+    public void write(int addr, int data)
+    {
+        m_op = OP_WRITE;
+        m_addr = addr;
+        m_data = data;
+        m_request = true;
+        m_signal.signal();
+    }//write
+
+    /**
+     * readBulk
+     *
+     * records a request to read a contiguous range of words from the disk
+     * into the given buffer.  A single INT_READ_DONE interrupt is raised when
+     * the whole range has been transferred.
+     *
+     * @param addr the first disk address to read
+     * @param dst  the buffer to fill
+     * @param off  where in dst to put the first word
+     * @param len  the number of words to read
+     */
+    public void readBulk(int addr, int[] dst, int off, int len)
+    {
+        m_op = OP_READ_BULK;
+        m_addr = addr;
+        m_bulkBuf = dst;
+        m_bulkOff = off;
+        m_bulkLen = len;
+        m_request = true;
+        m_signal.signal();
+    }//readBulk
+
+    /**
+     * writeBulk
+     *
+     * records a request to write a contiguous range of words from the given
+     * buffer to the disk.  A single INT_WRITE_DONE interrupt is raised when
+     * the whole range has been transferred.  The buffer must not be modified
+     * until then.
+     *
+     * @param addr the first disk address to write
+     * @param src  the buffer to copy from
+     * @param off  where in src the first word is
+     * @param len  the number of words to write
+     */
+    public void writeBulk(int addr, int[] src, int off, int len)
+    {
+        m_op = OP_WRITE_BULK;
+        m_addr = addr;
+        m_bulkBuf = src;
+        m_bulkOff = off;
+        m_bulkLen = len;
+        m_request = true;
+        m_signal.signal();
+    }//writeBulk
+
+    /**
+     * setSpinCount
+     *
+     * sets how long the device thread spins looking for a new request before
+     * it parks (0 = park immediately)
+     *
+     * @param spinCount the number of spin iterations
+     * @see RequestSignal
+     */
+    public void setSpinCount(int spinCount)
+    {
+        m_signal.setSpinCount(spinCount);
+    }
+
+    /**
+     * close
+     *
+     * releases the backing file
+     */
+    public void close() throws IOException
+    {
+        m_channel.close();
+        m_file.close();
+    }//close
+
+    /**
+     * calcLatency
+     *
+     * calculates the time needed to move the head from its current position to
+     * the given block and wait for the data to rotate under it.
+     *
+     * @param block the target block
+     * @return the latency in nanoseconds
+     */
+    private int calcLatency(int block)
+    {
+        int distance = Math.abs(block - m_headBlock);
+        int latency = 0;
+        if (distance > 0)
+        {
+            latency = m_settleLatency + distance * m_seekLatency;
+        }
+        latency += (int)(Math.random() * m_rotationLatency);
+
+        return latency;
+    }//calcLatency
+
+    /**
+     * readWord
+     *
+     * reads one word from the backing file.  Addresses outside the disk (or
+     * never written) read as zero.
+     */
+    private int readWord(int addr) throws IOException
+    {
+        if ((addr < 0) || (addr >= getCapacity()))
+        {
+            return 0;
+        }
+        m_buf.clear();
+        long pos = (long)addr * BYTES_PER_WORD;
+        while (m_buf.hasRemaining())
+        {
+            if (m_channel.read(m_buf, pos + m_buf.position()) < 0)
+            {
+                return 0;
+            }
+        }
+        m_buf.flip();
+        return m_buf.getInt();
+    }//readWord
+
+    /**
+     * writeWord
+     *
+     * writes one word to the backing file.  Writes outside the disk are
+     * ignored.
+     */
+    private void writeWord(int addr, int data) throws IOException
+    {
+        if ((addr < 0) || (addr >= getCapacity()))
+        {
+            return;
+        }
+        m_buf.clear();
+        m_buf.putInt(data);
+        m_buf.flip();
+        long pos = (long)addr * BYTES_PER_WORD;
+        while (m_buf.hasRemaining())
+        {
+            m_channel.write(m_buf, pos + m_buf.position());
+        }
+    }//writeWord
+
+    /**
+     * clampLength
+     *
+     * @return how many of the len words starting at addr lie on the disk
+     */
+    private int clampLength(int addr, int len)
+    {
+        if ((addr < 0) || (addr >= getCapacity()))
+        {
+            return 0;
+        }
+        return Math.min(len, getCapacity() - addr);
+    }//clampLength
+
+    /**
+     * readWords
+     *
+     * reads a range of words from the backing file with a single positional
+     * read.  Words outside the disk read as zero.
+     */
+    private void readWords(int addr, int[] dst, int off, int len) throws IOException
+    {
+        Arrays.fill(dst, off, off + len, 0);
+        int count = clampLength(addr, len);
+        if (count == 0)
+        {
+            return;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(count * BYTES_PER_WORD);
+        long pos = (long)addr * BYTES_PER_WORD;
+        while (bb.hasRemaining())
+        {
+            if (m_channel.read(bb, pos + bb.position()) < 0)
+            {
+                break;
+            }
+        }
+        bb.flip();
+        bb.asIntBuffer().get(dst, off, bb.remaining() / BYTES_PER_WORD);
+    }//readWords
+
+    /**
+     * writeWords
+     *
+     * writes a range of words to the backing file with a single positional
+     * write.  Words outside the disk are ignored.
+     */
+    private void writeWords(int addr, int[] src, int off, int len) throws IOException
+    {
+        int count = clampLength(addr, len);
+        if (count == 0)
+        {
+            return;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(count * BYTES_PER_WORD);
+        bb.asIntBuffer().put(src, off, count);
+        long pos = (long)addr * BYTES_PER_WORD;
+        while (bb.hasRemaining())
+        {
+            m_channel.write(bb, pos + bb.position());
+        }
+    }//writeWords
+
+    /**
+     * run
+     *
+     * This method represents the device + controller.  It watches for reqeusts
+     * (via m_request, m_addr and m_data) and handles them.  It inserts a
+     * seek and rotational latency based on the distance between the head
+     * and the requested block.
+     */
+    public void run()
+    {
+        //Device runs until program ends
+        while(true)
+        {
+            //While there is no request to process, wait for the OS to signal one
+            while (!m_request)
+            {
+                m_signal.await();
+            }
+
+            //Sleep to simulate the seek and rotation plus the time to transfer
+            //any blocks after the first one
+            int block = blockOf(m_addr);
+            int lastBlock = block;
+            if ((m_op == OP_READ_BULK) || (m_op == OP_WRITE_BULK))
+            {
+                lastBlock = blockOf(m_addr + Math.max(1, m_bulkLen) - 1);
+            }
+            try
+            {
+                int latency = calcLatency(block) + (lastBlock - block) * m_transferLatency;
+                Thread.sleep(latency / 1000000, latency % 1000000);
+            }
+            catch(InterruptedException e) {} // should never happen
+            m_headBlock = Math.max(0, Math.min(lastBlock, m_numBlocks - 1));
+
+            //Perform the transfer
+            int data = -999;
+            try
+            {
+                switch(m_op)
+                {
+                    case OP_READ:
+                        data = readWord(m_addr);
+                        break;
+                    case OP_WRITE:
+                        writeWord(m_addr, m_data);
+                        break;
+                    case OP_READ_BULK:
+                        readWords(m_addr, m_bulkBuf, m_bulkOff, m_bulkLen);
+                        break;
+                    default:
+                        writeWords(m_addr, m_bulkBuf, m_bulkOff, m_bulkLen);
+                        break;
+                }
+            }
+            catch(IOException e)
+            {
+                System.out.println("DISK ERROR: " + e);
+            }
+
+            //Make the device available for another request before raising
+            //the interrupt so the OS can issue the next request from its
+            //interrupt handler
+            int op = m_op;
+            int addr = m_addr;
+            m_bulkBuf = null;
+            m_request = false;
+
+            //Notify the CPU of completed operation
+            if ((op == OP_READ) || (op == OP_READ_BULK))
+            {
+                m_IC.putData(InterruptController.INT_READ_DONE, m_Id, addr, data);
+            }
+            else
+            {
+                m_IC.putData(InterruptController.INT_WRITE_DONE, m_Id, addr, -999);
+            }
+        }//while
+    }//run
+
+}//class DiskDevice
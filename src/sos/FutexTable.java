@@ -0,0 +1,209 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is the OS's futex wait table.  A process that finds a lock (or
+ * any other word in memory) in a state that means it has to wait asks the
+ * OS to block it on the word's RAM address.  Another process that changes
+ * the word wakes some or all of the waiters.  The waiters for each address
+ * are kept in arrival order in a hash table keyed by the address so that a
+ * wake only looks at the processes waiting on that word.
+ *
+ * Like the {@link TimerDevice} this is a device without a thread: waiting
+ * processes are blocked on it so that the scheduler treats them like any
+ * other process that is waiting for I/O.  The table only manages state.  The
+ * OS decides when to wait and wake.
+ *
+ * @see SOS
+ */
+public class FutexTable implements Device
+{
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private int m_Id = -1;              // the table is not in the device table
+
+    /** the waiters for each RAM address, in arrival order */
+    private HashMap<Integer, Vector<Object>> m_waiters = new HashMap<Integer, Vector<Object>>();
+    private int m_size = 0;             // number of waiting processes
+
+    //Statistics
+    private long m_waits = 0;           // processes that blocked
+    private long m_retries = 0;         // waits refused because the word had changed
+    private long m_wakeCalls = 0;       // wake requests
+    private long m_woken = 0;           // processes woken
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * Any number of processes can wait at once
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true (the table never has a request in progress)
+     */
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return false
+     */
+    public boolean isReadable()
+    {
+        return false;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return false
+     */
+    public boolean isWriteable()
+    {
+        return false;
+    }
+
+    /**
+     * read
+     *
+     * not implemented
+     */
+    public int read(int addr)
+    {
+        //This method should never be called
+        return -1;
+    }
+
+    /**
+     * write
+     *
+     * not implemented
+     */
+    public void write(int addr, int data)
+    {
+        //This method should never be called
+    }
+
+    /**
+     * size
+     *
+     * @return the number of waiting processes
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * add
+     *
+     * queues a process on an address
+     *
+     * @param addr  the RAM address of the word
+     * @param owner the process
+     */
+    public void add(int addr, Object owner)
+    {
+        Vector<Object> queue = m_waiters.get(addr);
+        if (queue == null)
+        {
+            queue = new Vector<Object>();
+            m_waiters.put(addr, queue);
+        }
+        queue.add(owner);
+        m_size++;
+        m_waits++;
+    }//add
+
+    /**
+     * recordRetry
+     *
+     * counts a wait that was refused because the word no longer held the
+     * value the process expected
+     */
+    public void recordRetry()
+    {
+        m_retries++;
+    }
+
+    /**
+     * wake
+     *
+     * removes the oldest waiters on an address
+     *
+     * @param addr  the RAM address of the word
+     * @param count the maximum number of waiters to remove
+     * @param woken the waiters that were removed are appended to this
+     * @return the number of waiters removed
+     */
+    public int wake(int addr, int count, Vector<Object> woken)
+    {
+        m_wakeCalls++;
+        Vector<Object> queue = m_waiters.get(addr);
+        int n = 0;
+        while ((queue != null) && !queue.isEmpty() && (n < count))
+        {
+            woken.add(queue.remove(0));
+            n++;
+        }
+        if ((queue != null) && queue.isEmpty())
+        {
+            m_waiters.remove(addr);
+        }
+        m_size -= n;
+        m_woken += n;
+        return n;
+    }//wake
+
+    /**
+     * toString
+     *
+     * @return a summary of the table statistics
+     */
+    public String toString()
+    {
+        return m_waits + " waits, " + m_retries + " retries, " + m_wakeCalls
+            + " wakes (" + m_woken + " woken), " + m_size + " waiting";
+    }//toString
+
+};//class FutexTable
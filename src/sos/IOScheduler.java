@@ -0,0 +1,491 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class holds the queue of pending requests for a single device and
+ * decides which one the OS should issue next.  For a {@link DiskDevice} the
+ * order matters because the time to serve a request depends on how far the
+ * head has to move, so several classic disk scheduling policies are
+ * supported:
+ *
+ * <ul>
+ * <li>FCFS     - first come, first served</li>
+ * <li>SSTF     - shortest seek time first</li>
+ * <li>SCAN     - the elevator: sweep in one direction, then reverse</li>
+ * <li>CSCAN    - sweep upward only and jump back to the lowest block</li>
+ * <li>DEADLINE - C-SCAN order unless a request has waited past its
+ *                deadline, in which case the oldest expired request is
+ *                served first</li>
+ * </ul>
+ *
+ * For devices without a head (console, keyboard) every request is at block 0
+ * so all policies degenerate to FCFS.
+ *
+ * The scheduler also gathers statistics about the requests it has served:
+ * seek distance, throughput and latency percentiles.
+ *
+ * @see SOS
+ * @see DiskDevice
+ */
+public class IOScheduler
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    //The available scheduling policies
+    public static final int POLICY_FCFS     = 0;
+    public static final int POLICY_SSTF     = 1;
+    public static final int POLICY_SCAN     = 2;
+    public static final int POLICY_CSCAN    = 3;
+    public static final int POLICY_DEADLINE = 4;
+
+    /** names of the policies (indexed by the POLICY constants) */
+    public static final String[] POLICY_NAMES =
+        { "FCFS", "SSTF", "SCAN", "CSCAN", "DEADLINE" };
+
+    /** how long (in CPU ticks) a read may wait under the DEADLINE policy */
+    public static final int READ_EXPIRE = 500;
+
+    /** how long (in CPU ticks) a write may wait under the DEADLINE policy */
+    public static final int WRITE_EXPIRE = 5000;
+
+    //The kinds of request (what the OS does when the request completes)
+    public static final int KIND_WORD      = 0;  // one word for a process
+    public static final int KIND_FILL      = 1;  // a block for the buffer cache
+    public static final int KIND_WRITEBACK = 2;  // a dirty block from the buffer cache
+    public static final int KIND_DMA       = 3;  // a range of words for a process
+    public static final int KIND_TYPEAHEAD = 4;  // a value for the type-ahead buffer
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Request
+     *
+     * a single pending or in-flight device request
+     */
+    public static class Request
+    {
+        /** the operation (SOS.SYSCALL_READ or SOS.SYSCALL_WRITE) */
+        public int op;
+        /** the device address */
+        public int addr;
+        /** the data to write (writes only) */
+        public int data;
+        /** the block that contains addr */
+        public int block;
+        /** the CPU tick when the request was queued */
+        public int submitTick;
+        /** the CPU tick by which the request should be served (DEADLINE) */
+        public int deadline;
+        /** whoever is waiting for this request (a process in SOS) */
+        public Object owner;
+        /** one of the KIND constants */
+        public int kind = KIND_WORD;
+        /** for bulk transfers: the buffer to read into or write from */
+        public int[] buffer = null;
+        /** for bulk transfers: the offset of the transfer in buffer */
+        public int offset = 0;
+        /** for bulk transfers: the number of words */
+        public int length = 1;
+        /** for DMA transfers: the RAM address of the process' buffer */
+        public int memAddr = 0;
+        /** extra information the OS needs on completion */
+        public Object context = null;
+        /** for batched requests: the entry number in the submission ring */
+        public int slot = -1;
+        /** other requests that will be satisfied when this one completes */
+        public Vector<Request> waiters = null;
+
+        public Request(int op, int addr, int data, Object owner)
+        {
+            this.op = op;
+            this.addr = addr;
+            this.data = data;
+            this.block = DiskDevice.blockOf(Math.max(0, addr));
+            this.owner = owner;
+        }
+    }//class Request
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    /** the requests that have not been issued yet in arrival order */
+    private Vector<Request> m_pending = new Vector<Request>();
+
+    /** the device that this queue feeds */
+    private Device m_device = null;
+
+    /** the policy used to pick the next request */
+    private int m_policy = POLICY_FCFS;
+
+    /** SCAN: true if the head is currently sweeping toward higher blocks */
+    private boolean m_sweepUp = true;
+
+    /** the block the previous request was served at */
+    private int m_lastBlock = 0;
+
+    //Statistics
+    private long m_totalSeek = 0;       // sum of all seek distances (in blocks)
+    private int m_issued = 0;           // number of requests handed to the device
+    private int m_completed = 0;        // number of completed requests
+    private int m_firstSubmit = -1;     // tick when the first request arrived
+    private int m_lastComplete = 0;     // tick when the last request completed
+    private int[] m_latencies = new int[64]; // latency of each completed request
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param dev    the device this scheduler feeds
+     * @param policy one of the POLICY constants
+     */
+    public IOScheduler(Device dev, int policy)
+    {
+        m_device = dev;
+        setPolicy(policy);
+    }//ctor
+
+    /**
+     * parsePolicy
+     *
+     * @param name the name of a policy (case insensitive)
+     * @return the matching POLICY constant -OR- -1 if there is no such policy
+     */
+    public static int parsePolicy(String name)
+    {
+        for(int i = 0; i < POLICY_NAMES.length; i++)
+        {
+            if (POLICY_NAMES[i].equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }//parsePolicy
+
+    /**
+     * setPolicy
+     *
+     * @param policy one of the POLICY constants.  Invalid values select FCFS.
+     */
+    public void setPolicy(int policy)
+    {
+        if ((policy < POLICY_FCFS) || (policy > POLICY_DEADLINE))
+        {
+            policy = POLICY_FCFS;
+        }
+        m_policy = policy;
+    }//setPolicy
+
+    /**
+     * getPolicy
+     *
+     * @return the current POLICY constant
+     */
+    public int getPolicy()
+    {
+        return m_policy;
+    }
+
+    /**
+     * isEmpty
+     *
+     * @return true if there are no pending requests
+     */
+    public boolean isEmpty()
+    {
+        return m_pending.isEmpty();
+    }
+
+    /**
+     * size
+     *
+     * @return the number of pending requests
+     */
+    public int size()
+    {
+        return m_pending.size();
+    }
+
+    /**
+     * add
+     *
+     * queues a new request
+     *
+     * @param req the request
+     * @param now the current CPU tick
+     */
+    public void add(Request req, int now)
+    {
+        req.submitTick = now;
+        req.deadline = now + ((req.op == SOS.SYSCALL_WRITE) ? WRITE_EXPIRE : READ_EXPIRE);
+        m_pending.add(req);
+        if (m_firstSubmit < 0)
+        {
+            m_firstSubmit = now;
+        }
+    }//add
+
+    /**
+     * headBlock
+     *
+     * @return where the device's head is right now (0 for devices without one)
+     */
+    private int headBlock()
+    {
+        if (m_device instanceof DiskDevice)
+        {
+            return ((DiskDevice)m_device).getHeadBlock();
+        }
+        return 0;
+    }//headBlock
+
+    /**
+     * next
+     *
+     * removes and returns the request that should be issued next according to
+     * the current policy
+     *
+     * @param now the current CPU tick
+     * @return the next request -OR- null if there are none
+     */
+    public Request next(int now)
+    {
+        if (m_pending.isEmpty())
+        {
+            return null;
+        }
+
+        int head = headBlock();
+        int idx;
+        switch(m_policy)
+        {
+            case POLICY_SSTF:
+                idx = pickNearest(head);
+                break;
+            case POLICY_SCAN:
+                idx = pickScan(head);
+                break;
+            case POLICY_CSCAN:
+                idx = pickCScan(head);
+                break;
+            case POLICY_DEADLINE:
+                idx = pickExpired(now);
+                if (idx < 0)
+                {
+                    idx = pickCScan(head);
+                }
+                break;
+            default:
+                idx = 0;
+                break;
+        }//switch
+
+        Request req = m_pending.remove(idx);
+        m_totalSeek += Math.abs(req.block - m_lastBlock);
+        m_lastBlock = req.block;
+        m_issued++;
+        return req;
+    }//next
+
+    /**
+     * pickNearest
+     *
+     * @return the index of the pending request closest to the head
+     */
+    private int pickNearest(int head)
+    {
+        int best = 0;
+        int bestDist = Integer.MAX_VALUE;
+        for(int i = 0; i < m_pending.size(); i++)
+        {
+            int dist = Math.abs(m_pending.get(i).block - head);
+            if (dist < bestDist)
+            {
+                best = i;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }//pickNearest
+
+    /**
+     * pickInDirection
+     *
+     * @return the index of the closest pending request at or beyond the head
+     *         in the given direction -OR- -1 if there is none
+     */
+    private int pickInDirection(int head, boolean up)
+    {
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for(int i = 0; i < m_pending.size(); i++)
+        {
+            int dist = m_pending.get(i).block - head;
+            if (!up)
+            {
+                dist = -dist;
+            }
+            if ((dist >= 0) && (dist < bestDist))
+            {
+                best = i;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }//pickInDirection
+
+    /**
+     * pickScan
+     *
+     * @return the index of the next request for the elevator algorithm
+     */
+    private int pickScan(int head)
+    {
+        int idx = pickInDirection(head, m_sweepUp);
+        if (idx < 0)
+        {
+            m_sweepUp = !m_sweepUp;
+            idx = pickInDirection(head, m_sweepUp);
+        }
+        return idx;
+    }//pickScan
+
+    /**
+     * pickCScan
+     *
+     * @return the index of the next request for circular SCAN
+     */
+    private int pickCScan(int head)
+    {
+        int idx = pickInDirection(head, true);
+        if (idx < 0)
+        {
+            //Wrap around to the lowest block
+            idx = pickInDirection(0, true);
+        }
+        return idx;
+    }//pickCScan
+
+    /**
+     * pickExpired
+     *
+     * @return the index of the oldest request whose deadline has passed -OR-
+     *         -1 if none have expired
+     */
+    private int pickExpired(int now)
+    {
+        int best = -1;
+        for(int i = 0; i < m_pending.size(); i++)
+        {
+            Request req = m_pending.get(i);
+            if ((req.deadline <= now)
+                && ((best < 0) || (req.submitTick < m_pending.get(best).submitTick)))
+            {
+                best = i;
+            }
+        }
+        return best;
+    }//pickExpired
+
+    /**
+     * complete
+     *
+     * records the statistics for a request that the device has finished
+     *
+     * @param req the request
+     * @param now the current CPU tick
+     */
+    public void complete(Request req, int now)
+    {
+        if (m_completed == m_latencies.length)
+        {
+            m_latencies = Arrays.copyOf(m_latencies, m_latencies.length * 2);
+        }
+        m_latencies[m_completed] = now - req.submitTick;
+        m_completed++;
+        m_lastComplete = now;
+    }//complete
+
+    /**
+     * getCompleted
+     *
+     * @return the number of requests completed so far
+     */
+    public int getCompleted()
+    {
+        return m_completed;
+    }
+
+    /**
+     * getAverageSeek
+     *
+     * @return the average seek distance (in blocks) per issued request
+     */
+    public double getAverageSeek()
+    {
+        if (m_issued == 0)
+        {
+            return 0.0;
+        }
+        return (double)m_totalSeek / m_issued;
+    }//getAverageSeek
+
+    /**
+     * getThroughput
+     *
+     * @return the number of requests completed per 1000 CPU ticks
+     */
+    public double getThroughput()
+    {
+        int elapsed = m_lastComplete - m_firstSubmit;
+        if ((m_completed == 0) || (elapsed <= 0))
+        {
+            return 0.0;
+        }
+        return 1000.0 * m_completed / elapsed;
+    }//getThroughput
+
+    /**
+     * getLatencyPercentile
+     *
+     * @param pct a percentile between 0 and 100
+     * @return the latency (in CPU ticks) at the given percentile
+     */
+    public int getLatencyPercentile(double pct)
+    {
+        if (m_completed == 0)
+        {
+            return 0;
+        }
+        int[] sorted = Arrays.copyOf(m_latencies, m_completed);
+        Arrays.sort(sorted);
+        int idx = (int)Math.ceil(pct / 100.0 * m_completed) - 1;
+        return sorted[Math.max(0, Math.min(idx, m_completed - 1))];
+    }//getLatencyPercentile
+
+    /**
+     * toString
+     *
+     * @return a summary of the statistics gathered by this scheduler
+     */
+    public String toString()
+    {
+        return POLICY_NAMES[m_policy] + ": " + m_completed + " requests"
+            + " avg seek=" + String.format("%.1f", getAverageSeek())
+            + " throughput=" + String.format("%.2f", getThroughput()) + "/1000 ticks"
+            + " latency p50=" + getLatencyPercentile(50)
+            + " p90=" + getLatencyPercentile(90)
+            + " p99=" + getLatencyPercentile(99)
+            + " max=" + getLatencyPercentile(100);
+    }//toString
+
+};//class IOScheduler
@@ -6,6 +6,13 @@ import java.util.*;
  * This class represents the CPU's interrupt controller.  More abstractly is the
  * container object between a producer (device(s)) and consumer (CPU).
  *
+ * Each device raises its interrupts on its own line (the line number is the
+ * device id).  Every line has a priority and can be masked.  When the CPU
+ * asks for work it is given the oldest pending interrupt of the highest
+ * priority unmasked line.  Lines with the same priority are served in the
+ * order their oldest interrupt arrived.  Interrupts raised on a masked line
+ * stay pending until it is unmasked (or the kernel polls them).
+ *
  * Adapted from an example in the Concurrent Programming Tutorial written by Sun
  * Microsystems Inc.
  *
@@ -21,20 +28,49 @@ public class InterruptController
     //Each interrupt that this controller handles has a unique ID
     public static final int INT_READ_DONE   = 100;
     public static final int INT_WRITE_DONE  = 101;
-    
+
+    //Line priorities (higher is served first)
+    public static final int PRIORITY_LOW    = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH   = 10;
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Line
+     *
+     * the state of a single interrupt line
+     */
+    private static class Line
+    {
+        /** the priority of the line */
+        private int priority = PRIORITY_NORMAL;
+        /** true if interrupts on this line are held back */
+        private boolean masked = false;
+        /** the pending interrupts (operation, devNum, addr, data) */
+        private Vector<int[]> pending = new Vector<int[]>();
+        /** arrival number of the oldest pending interrupt */
+        private long oldest = 0;
+    }//class Line
+
     //======================================================================
     // Variables
     //----------------------------------------------------------------------
-    private int m_operation = 0;    // What interrupt is to be generated?
-    private int m_devNum = 0;       // the id of the device that has data
-    private int m_addr = 0;         // the address where data was read/wrote
-    private int m_data = 0;         // the data 
-    private boolean m_empty = true; // whether or not there is an interrupt
-    
+    private Vector<Line> m_lines = new Vector<Line>(); // indexed by device id
+    private volatile int m_pending = 0; // number of pending interrupts (all lines)
+    private long m_arrivals = 0;        // counts interrupts as they arrive
+
+    //Statistics
+    private long m_raised = 0;          // interrupts raised by devices
+    private long m_delivered = 0;       // interrupts handed to the CPU
+    private long m_polled = 0;          // interrupts collected by polling
+
     //======================================================================
     // Methods
     //----------------------------------------------------------------------
-    
+
     /**
      * the constructor does nothing
      *
@@ -46,67 +82,210 @@ public class InterruptController
     /**
      * Is there data available to take?
      *
+     * (Interrupts on masked lines count as available.  The CPU finds out
+     * they can't be delivered yet when {@link #take} returns null.)
      */
     public boolean isEmpty()
     {
-        return m_empty;
+        return m_pending == 0;
     }
 
+    /**
+     * getLine
+     *
+     * @return the line for the given device (created if necessary)
+     */
+    private Line getLine(int devNum)
+    {
+        while (m_lines.size() <= devNum)
+        {
+            m_lines.add(new Line());
+        }
+        return m_lines.get(devNum);
+    }//getLine
+
+    /**
+     * setPriority
+     *
+     * sets the priority of a device's interrupt line
+     *
+     * @param devNum   the device id
+     * @param priority the new priority (higher is served first)
+     */
+    public synchronized void setPriority(int devNum, int priority)
+    {
+        getLine(devNum).priority = priority;
+    }
+
+    /**
+     * mask / unmask
+     *
+     * holds back (or releases) the interrupts of a single device
+     *
+     * @param devNum the device id
+     */
+    public synchronized void mask(int devNum)
+    {
+        getLine(devNum).masked = true;
+    }
+
+    public synchronized void unmask(int devNum)
+    {
+        getLine(devNum).masked = false;
+        notifyAll();
+    }
+
+    /**
+     * isMasked
+     *
+     * @return true if the given device's interrupts are held back
+     */
+    public synchronized boolean isMasked(int devNum)
+    {
+        return getLine(devNum).masked;
+    }
+
+    /**
+     * selectLine
+     *
+     * @return the index of the highest priority unmasked line with pending
+     *         interrupts -OR- -1 if no interrupt can be delivered
+     */
+    private int selectLine()
+    {
+        int best = -1;
+        for(int i = 0; i < m_lines.size(); i++)
+        {
+            Line line = m_lines.get(i);
+            if (line.masked || line.pending.isEmpty())
+            {
+                continue;
+            }
+            if ((best < 0) || (line.priority > m_lines.get(best).priority)
+                || ((line.priority == m_lines.get(best).priority)
+                    && (line.oldest < m_lines.get(best).oldest)))
+            {
+                best = i;
+            }
+        }//for
+
+        return best;
+    }//selectLine
+
+    /**
+     * take
+     *
+     * removes the oldest pending interrupt of the highest priority unmasked
+     * line without waiting.  The array holds the operation, device number,
+     * address and data of the interrupt.
+     *
+     * @return the interrupt -OR- null if none can be delivered right now
+     */
+    public synchronized int[] take()
+    {
+        int idx = selectLine();
+        if (idx < 0)
+        {
+            return null;
+        }
+
+        Line line = m_lines.get(idx);
+        int[] retVal = line.pending.remove(0);
+        m_pending--;
+        m_delivered++;
+        if (!line.pending.isEmpty())
+        {
+            line.oldest = m_arrivals;   // keep the rest behind earlier lines
+        }
+
+        return retVal;
+    }//take
+
+    /**
+     * poll
+     *
+     * removes every pending interrupt of a device whether or not its line is
+     * masked.  The kernel uses this to collect completions from a device
+     * whose interrupts it has masked.
+     *
+     * @param devNum the device id
+     * @return the interrupts in arrival order (possibly none)
+     */
+    public synchronized int[][] poll(int devNum)
+    {
+        Line line = getLine(devNum);
+        int[][] batch = line.pending.toArray(new int[line.pending.size()][]);
+        line.pending.clear();
+        m_pending -= batch.length;
+        m_polled += batch.length;
+
+        return batch;
+    }//poll
+
     /**
      * getData
      *
-     * is used by the CPU to retrieve the data associated with the interrupt.
+     * is used by the CPU to retrieve the data associated with the oldest
+     * deliverable interrupt of the highest priority line.  Waits until there
+     * is one.
      */
     public synchronized int[] getData()
     {
-        while(m_empty)
+        int[] retVal = take();
+        while(retVal == null)
         {
             try
             {
                 wait();
             }
             catch(InterruptedException e) {} // should never happen
+            retVal = take();
         }
 
-        //Fill an array with the device number and data
-        int[] retVal = new int[4];
-        retVal[0] = m_operation;
-        retVal[1] = m_devNum;
-        retVal[2] = m_addr;
-        retVal[3] = m_data;
-
-        //Make the interrupt controller available for other devices
-        m_empty = true;
-        notifyAll();
-
         return retVal;
-        
+
     }//getData
 
     /**
      * putData
      *
-     * is used by a device to signal that it has data for the CPU.
+     * is used by a device to signal that it has data for the CPU.  The
+     * interrupt is queued on the device's line so the device never has to
+     * wait for the CPU.
      */
     public synchronized void putData(int operation, int devNum, int addr, int data)
     {
-        while(!m_empty)
+        Line line = getLine(devNum);
+        if (line.pending.isEmpty())
         {
-            try
-            {
-                wait();
-            }
-            catch(InterruptedException e) {} // should never happen
+            line.oldest = m_arrivals;
         }
-        
+        m_arrivals++;
+
         //Make the data on the bus available to the CPU
-        m_empty = false;
-        m_devNum = devNum;
-        m_operation = operation;
-        m_addr = addr;
-        m_data = data;
+        int[] intData = new int[4];
+        intData[0] = operation;
+        intData[1] = devNum;
+        intData[2] = addr;
+        intData[3] = data;
+        line.pending.add(intData);
+        m_pending++;
+        m_raised++;
         notifyAll();
-            
+
     }//putData
-    
+
+    /**
+     * toString
+     *
+     * @return a summary of how many interrupts were raised, how many were
+     *         delivered to the CPU and how many were collected by polling
+     *         instead
+     */
+    public synchronized String toString()
+    {
+        return m_raised + " interrupts raised, " + m_delivered + " delivered, "
+            + m_polled + " polled";
+    }//toString
+
 };//class InterruptController
@@ -3,21 +3,30 @@ package sos;
 import java.util.*;
 
 /**
- * This class simulates a simple, non-sharable read-only device.  It always
- * returns a random number to the CPU via the data bus.  
+ * This class simulates a simple, non-sharable read-only device.  The values
+ * it puts on the data bus come from a {@link KeyboardSource}, which by
+ * default returns a random number every time.
  *
  * @see Sim
  * @see CPU
  * @see Device
+ * @see DMADevice
+ * @see KeyboardSource
  */
-public class KeyboardDevice implements Device, Runnable
+public class KeyboardDevice implements DMADevice, Runnable
 {
     private int m_Id = -1;             // The OS assigned device ID
-    private boolean m_request = false; // is the device currently processing a request?
+    private volatile boolean m_request = false; // is the device currently processing a request?
     private int m_addr = 0;            // address to read from
+    private int[] m_bulkBuf = null;    // buffer for the current bulk request (if any)
+    private int m_bulkOff = 0;         // offset of the transfer in m_bulkBuf
+    private int m_bulkLen = 0;         // number of words in the bulk request
     private int m_maxLatency = 10000;  // maximum latency in ns
     private int m_minLatency = 500;    // minimum latnecy in ns
     private InterruptController m_IC = null; // reference to the interrupt controller
+    private RequestSignal m_signal = new RequestSignal(); // rung when a request arrives
+    private KeyboardSource m_source = new KeyboardSource.RandomSource(); // where keystrokes come from
+    private boolean m_zeroLatency = false; // skip the simulated latency?
 
     /**
      * Verbose mode generates helpful debugging printlns
@@ -124,7 +133,9 @@ public class KeyboardDevice implements Device, Runnable
     public int read(int addr)
     {
         m_addr = addr;
+        m_bulkBuf = null;
         m_request = true;
+        m_signal.signal();
 
         return -9999;           // no longer used
     }//read
@@ -139,6 +150,73 @@ public class KeyboardDevice implements Device, Runnable
         //This method should never be called
     }
     
+    /**
+     * readBulk
+     *
+     * records a request for a range of keystrokes.  The buffer is filled from
+     * the keyboard's source before the single completion interrupt is
+     * raised.
+     */
+    public void readBulk(int addr, int[] dst, int off, int len)
+    {
+        m_addr = addr;
+        m_bulkBuf = dst;
+        m_bulkOff = off;
+        m_bulkLen = len;
+        m_request = true;
+        m_signal.signal();
+    }//readBulk
+    
+    /**
+     * writeBulk
+     *
+     * not implemented
+     */
+    public void writeBulk(int addr, int[] src, int off, int len)
+    {
+        //This method should never be called
+    }
+    
+    /**
+     * setSpinCount
+     *
+     * sets how long the device thread spins looking for a new request before
+     * it parks (0 = park immediately)
+     *
+     * @param spinCount the number of spin iterations
+     * @see RequestSignal
+     */
+    public void setSpinCount(int spinCount)
+    {
+        m_signal.setSpinCount(spinCount);
+    }
+    
+    /**
+     * setSource
+     *
+     * selects where the keyboard's values come from.  Should be called before
+     * the device is started.
+     *
+     * @param source the new source
+     */
+    public void setSource(KeyboardSource source)
+    {
+        m_source = source;
+    }
+
+    /**
+     * setZeroLatency
+     *
+     * turns the simulated typing latency off (or back on) so that
+     * input-heavy programs run as fast as the source can supply values
+     *
+     * @param zeroLatency true to skip the latency
+     */
+    public void setZeroLatency(boolean zeroLatency)
+    {
+        m_zeroLatency = zeroLatency;
+    }
+    
     /**
      * run
      *
@@ -152,32 +230,49 @@ public class KeyboardDevice implements Device, Runnable
         //Device runs until program ends
         while(true)
         {
-            //If there is no request to process, yield the CPU to another thread
+            //If there is no request to process, wait for the OS to signal one
             while (!m_request)
             {
-                Thread.yield();
+                m_signal.await();
             }
 
-            //generate a random multiple of 1000
-            int rn = (int)(Math.random() * 999999) * 1000;
+            //get the next keystroke
+            int rn = m_source.next();
 
             //Sleep to simulate the latency
-            try
+            if (!m_zeroLatency)
             {
-                int latency = (rn % (m_maxLatency - m_minLatency)) + m_minLatency;
-                Thread.sleep(latency / 1000, latency % 1000);
+                try
+                {
+                    int range = Math.max(1, m_maxLatency - m_minLatency);
+                    int latency = (Math.abs(rn) % range) + m_minLatency;
+                    Thread.sleep(latency / 1000, latency % 1000);
+                }
+                catch(InterruptedException e) {} // should never happen
+            }
+            
+            //A bulk request gets a whole buffer of keystrokes
+            if (m_bulkBuf != null)
+            {
+                m_bulkBuf[m_bulkOff] = rn;
+                for(int i = 1; i < m_bulkLen; i++)
+                {
+                    m_bulkBuf[m_bulkOff + i] = m_source.next();
+                }
+                m_bulkBuf = null;
             }
-            catch(InterruptedException e) {} // should never happen
             
             //Notify the interrupt controller of the available data
             if (m_verbose)
             {
                 System.out.println("Keyboard puts '" + rn + "' on the data bus.");
             }
-            m_IC.putData(InterruptController.INT_READ_DONE, m_Id, m_addr, rn);
-
-            //Make the device available for another request
+            //Make the device available for another request before raising
+            //the interrupt so the OS can issue the next request from its
+            //interrupt handler
+            int addr = m_addr;
             m_request = false;
+            m_IC.putData(InterruptController.INT_READ_DONE, m_Id, addr, rn);
         }//while
     }//run
 
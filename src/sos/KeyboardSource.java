@@ -0,0 +1,189 @@
+package sos;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This interface defines where a {@link KeyboardDevice} gets the values that
+ * it puts on the data bus.  Several sources are provided:
+ *
+ * <ul>
+ * <li>RandomSource - random multiples of 1000 (the original keyboard
+ *                    behavior)</li>
+ * <li>SeededSource - the same kind of values from a seeded generator so a
+ *                    run can be repeated exactly</li>
+ * <li>FileSource   - values recorded in a text file (whitespace separated
+ *                    integers) streamed through a file channel</li>
+ * <li>QueueSource  - values queued in memory by the caller (for tests)</li>
+ * </ul>
+ *
+ * A source is only read by its keyboard's device thread.
+ *
+ * @see KeyboardDevice
+ */
+public interface KeyboardSource
+{
+    /**
+     * the value returned once a source has run out of input
+     */
+    public static final int END_OF_INPUT = -1;
+
+    /**
+     * next
+     *
+     * @return the next keystroke -OR- END_OF_INPUT if there are no more
+     */
+    public int next();
+
+    //======================================================================
+    // Implementations
+    //----------------------------------------------------------------------
+
+    /**
+     * class RandomSource
+     *
+     * produces random multiples of 1000 that differ on every run
+     */
+    public static class RandomSource implements KeyboardSource
+    {
+        public int next()
+        {
+            return (int)(Math.random() * 999999) * 1000;
+        }
+    }//class RandomSource
+
+    /**
+     * class SeededSource
+     *
+     * produces random multiples of 1000 from a seeded generator
+     */
+    public static class SeededSource implements KeyboardSource
+    {
+        private Random m_random;
+
+        public SeededSource(long seed)
+        {
+            m_random = new Random(seed);
+        }
+
+        public int next()
+        {
+            return m_random.nextInt(999999) * 1000;
+        }
+    }//class SeededSource
+
+    /**
+     * class FileSource
+     *
+     * reads whitespace separated integers from a text file.  The file is
+     * read through a file channel in large chunks and parsed in place so
+     * that a long recording costs no more than a few system calls.
+     */
+    public static class FileSource implements KeyboardSource
+    {
+        /** the number of bytes read from the file at a time */
+        public static final int CHUNK_SIZE = 65536;
+
+        private FileChannel m_channel = null;   // the recording
+        private ByteBuffer m_buf = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        private boolean m_eof = false;          // has the whole file been read?
+
+        /**
+         * This constructor opens the recording
+         */
+        public FileSource(String fileName) throws IOException
+        {
+            m_channel = new FileInputStream(fileName).getChannel();
+            m_buf.flip();       // start out empty
+        }//ctor
+
+        /**
+         * nextByte
+         *
+         * @return the next byte of the file -OR- -1 at the end of the file
+         */
+        private int nextByte()
+        {
+            if (!m_buf.hasRemaining())
+            {
+                if (m_eof)
+                {
+                    return -1;
+                }
+                try
+                {
+                    m_buf.clear();
+                    if (m_channel.read(m_buf) < 0)
+                    {
+                        m_eof = true;
+                        m_channel.close();
+                    }
+                }
+                catch(IOException e)
+                {
+                    System.out.println("KEYBOARD ERROR: " + e);
+                    m_eof = true;
+                }
+                m_buf.flip();
+                if (!m_buf.hasRemaining())
+                {
+                    return -1;
+                }
+            }
+            return m_buf.get();
+        }//nextByte
+
+        public int next()
+        {
+            //Skip anything that can't start a number
+            int c = nextByte();
+            while ((c >= 0) && (c != '-') && ((c < '0') || (c > '9')))
+            {
+                c = nextByte();
+            }
+            if (c < 0)
+            {
+                return END_OF_INPUT;
+            }
+
+            boolean negative = (c == '-');
+            if (negative)
+            {
+                c = nextByte();
+            }
+            int value = 0;
+            while ((c >= '0') && (c <= '9'))
+            {
+                value = value * 10 + (c - '0');
+                c = nextByte();
+            }
+            return negative ? -value : value;
+        }//next
+    }//class FileSource
+
+    /**
+     * class QueueSource
+     *
+     * hands out values that have been added to it, in order.  Values may be
+     * added from any thread.
+     */
+    public static class QueueSource implements KeyboardSource
+    {
+        private ConcurrentLinkedQueue<Integer> m_queue = new ConcurrentLinkedQueue<Integer>();
+
+        public void add(int value)
+        {
+            m_queue.add(value);
+        }
+
+        public int next()
+        {
+            Integer value = m_queue.poll();
+            return (value == null) ? END_OF_INPUT : value.intValue();
+        }
+    }//class QueueSource
+
+};//interface KeyboardSource
@@ -0,0 +1,273 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class represents a pipe: a fixed capacity ring buffer in the kernel
+ * that lets processes pass values to each other without going through a
+ * device.  Like the {@link TimerDevice} it has no thread of its own.  A
+ * process that reads an empty pipe or writes a full one is blocked on the
+ * pipe and its request is queued here until another process makes room or
+ * provides a value.
+ *
+ * Processes find a pipe by a key that they agree on in advance.  The pipe
+ * only manages state.  The OS moves the values and wakes the waiters.
+ *
+ * @see SOS
+ */
+public class Pipe implements Device
+{
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private int m_Id = -1;              // the pipe's descriptor
+    private int m_key;                  // the key processes use to find it
+
+    private int[] m_ring;               // the buffered values
+    private int m_head = 0;             // index of the oldest value
+    private int m_count = 0;            // number of buffered values
+
+    /** the processes that have the pipe open */
+    private Vector<Object> m_users = new Vector<Object>();
+    /** reads waiting for a value, in arrival order */
+    private Vector<IOScheduler.Request> m_readers = new Vector<IOScheduler.Request>();
+    /** writes waiting for room, in arrival order */
+    private Vector<IOScheduler.Request> m_writers = new Vector<IOScheduler.Request>();
+
+    //Statistics
+    private int m_transferred = 0;      // values passed through the pipe
+    private int m_handoffs = 0;         // values handed straight to a waiting reader
+    private int m_readBlocks = 0;       // reads that found the pipe empty
+    private int m_writeBlocks = 0;      // writes that found the pipe full
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param key      the key processes use to find the pipe
+     * @param capacity the maximum number of values to buffer
+     */
+    public Pipe(int key, int capacity)
+    {
+        m_key = key;
+        m_ring = new int[Math.max(1, capacity)];
+    }//ctor
+
+    /**
+     * getId
+     *
+     * @return the pipe's descriptor
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the pipe's descriptor
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * getKey
+     *
+     * @return the key processes use to find the pipe
+     */
+    public int getKey()
+    {
+        return m_key;
+    }
+
+    /**
+     * isSharable
+     *
+     * @return true (a pipe exists to be shared)
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true (a pipe never has a request in progress)
+     */
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return true
+     */
+    public boolean isReadable()
+    {
+        return true;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return true
+     */
+    public boolean isWriteable()
+    {
+        return true;
+    }
+
+    /**
+     * read
+     *
+     * not implemented (the OS uses {@link #take})
+     */
+    public int read(int addr)
+    {
+        //This method should never be called
+        return -1;
+    }
+
+    /**
+     * write
+     *
+     * not implemented (the OS uses {@link #put})
+     */
+    public void write(int addr, int data)
+    {
+        //This method should never be called
+    }
+
+    /**
+     * isEmpty
+     *
+     * @return true if there are no buffered values
+     */
+    public boolean isEmpty()
+    {
+        return m_count == 0;
+    }
+
+    /**
+     * isFull
+     *
+     * @return true if the pipe cannot hold another value
+     */
+    public boolean isFull()
+    {
+        return m_count == m_ring.length;
+    }
+
+    /**
+     * put
+     *
+     * adds a value to the pipe.  The pipe must not be full.
+     *
+     * @param value the value
+     */
+    public void put(int value)
+    {
+        m_ring[(m_head + m_count) % m_ring.length] = value;
+        m_count++;
+        m_transferred++;
+    }//put
+
+    /**
+     * take
+     *
+     * removes the oldest value.  The pipe must not be empty.
+     *
+     * @return the value
+     */
+    public int take()
+    {
+        int value = m_ring[m_head];
+        m_head = (m_head + 1) % m_ring.length;
+        m_count--;
+        return value;
+    }//take
+
+    /**
+     * recordHandoff
+     *
+     * counts a value that was given to a waiting reader without being
+     * buffered
+     */
+    public void recordHandoff()
+    {
+        m_transferred++;
+        m_handoffs++;
+    }
+
+    /**
+     * getUsers
+     *
+     * @return the processes that have the pipe open
+     */
+    public Vector<Object> getUsers()
+    {
+        return m_users;
+    }
+
+    /**
+     * getReaders
+     *
+     * @return the reads waiting for a value
+     */
+    public Vector<IOScheduler.Request> getReaders()
+    {
+        return m_readers;
+    }
+
+    /**
+     * getWriters
+     *
+     * @return the writes waiting for room
+     */
+    public Vector<IOScheduler.Request> getWriters()
+    {
+        return m_writers;
+    }
+
+    /**
+     * addReader / addWriter
+     *
+     * queues a request that has to wait
+     */
+    public void addReader(IOScheduler.Request req)
+    {
+        m_readers.add(req);
+        m_readBlocks++;
+    }
+
+    public void addWriter(IOScheduler.Request req)
+    {
+        m_writers.add(req);
+        m_writeBlocks++;
+    }
+
+    /**
+     * toString
+     *
+     * @return a summary of the pipe statistics
+     */
+    public String toString()
+    {
+        return "key " + m_key + ": " + m_transferred + " values, " + m_handoffs
+            + " handed off, " + m_readBlocks + " reads blocked, "
+            + m_writeBlocks + " writes blocked";
+    }//toString
+
+};//class Pipe
@@ -1,6 +1,7 @@
 package sos;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 
 /**
@@ -59,11 +60,16 @@ public class Program
      **/
     private boolean m_verbose = false;
 
+    /**
+     * the program as loaded into RAM, built by the first call to getImage
+     **/
+    private int[] m_image = null;
+
     /**
      * when this program is being used by the simulation, this variable tracks
      * how many times it has been used to create a process
      */
-    public int callCount = 0;
+    private AtomicInteger m_callCount = new AtomicInteger(0);
      
 
     /**
@@ -108,6 +114,29 @@ public class Program
         return m_defaultAllocSize;
     }//getDefaultAllocSize
     
+    /**
+     * getCallCount
+     *
+     * @return the number of processes that have been created from this
+     *         program
+     */
+    public int getCallCount()
+    {
+        return m_callCount.get();
+    }//getCallCount
+    
+    /**
+     * addCalls
+     *
+     * records that processes have been created from this program
+     *
+     * @param n the number of processes
+     */
+    public void addCalls(int n)
+    {
+        m_callCount.addAndGet(n);
+    }//addCalls
+    
     /**
      * skipWhite
      *
@@ -250,6 +279,10 @@ public class Program
                     return -106;
                 }
             case 'C':
+                if (instr.charAt(1) == 'A')
+                {
+                    return CPU.CAS;
+                }
                 return CPU.COPY;
             case 'D':
                 return CPU.DIV;
@@ -552,6 +585,7 @@ public class Program
     {
         int retVal = 0;         // return value (success is default)
         m_verbose = verbose;    // init verbose mode
+        m_image = null;         // the program is about to change
         
         //Step 1:  Open the file
         BufferedReader file=null;    // contains the pidgin asm
@@ -671,23 +705,42 @@ public class Program
      * export
      *
      * converts the current program from an Vector of Integer to int[] that
-     * can be loaded into RAM
+     * can be loaded into RAM.  Each call returns its own copy of the image
+     * so a caller cannot change the program for the others.
      *
      * @return the converted program
      * @see RAM
      */
     public int[] export()
+    {
+        int[] image = getImage();
+        return (image == null) ? null : image.clone();
+    }//export
+
+    /**
+     * getImage
+     *
+     * returns the program as loaded into RAM.  The conversion is only done
+     * once and every call returns the same cached array, so this is only
+     * for the OS, which copies it into RAM and never modifies it.
+     *
+     * @return the converted program -OR- null if the program is empty
+     */
+    int[] getImage()
     {
         if (m_prog.size() == 0) return null;
-        
-        int result[] = new int[m_prog.size()]; // the return value
-        int i = 0;                             // counter/index
-        for(Integer intTmp : m_prog)
+        if (m_image == null)
         {
-            result[i] = intTmp.intValue();
-            i++;
+            int result[] = new int[m_prog.size()]; // the converted program
+            int i = 0;                             // counter/index
+            for(Integer intTmp : m_prog)
+            {
+                result[i] = intTmp.intValue();
+                i++;
+            }
+            m_image = result;
         }
-
-        return result;
-    }//export
+        
+        return m_image;
+    }//getImage
 };//class Program
@@ -136,4 +136,58 @@ public class RAM
         m_mem[addr] = val;
     }//write
 
+    /**
+     * readBlock
+     *
+     * copies a range of the simulated RAM into a buffer in a single burst
+     * (the latency is charged once for the whole range)
+     *
+     * @param addr  the first location to copy
+     * @param dst   the buffer to copy into
+     * @param off   where in dst to put the first word
+     * @param len   the number of words to copy
+     */
+    public void readBlock(int addr, int[] dst, int off, int len)
+    {
+        //Simulate RAM latency
+        if (m_latency > 0)
+        {
+            try
+            {
+                Thread.sleep(0, m_latency);
+            }
+            catch(InterruptedException ie)
+            {/* do nothing*/ }
+        }
+        
+        System.arraycopy(m_mem, addr, dst, off, len);
+    }//readBlock
+
+    /**
+     * writeBlock
+     *
+     * copies a buffer into a range of the simulated RAM in a single burst
+     * (the latency is charged once for the whole range)
+     *
+     * @param addr  the first location to write to
+     * @param src   the buffer to copy from
+     * @param off   where in src the first word is
+     * @param len   the number of words to copy
+     */
+    public void writeBlock(int addr, int[] src, int off, int len)
+    {
+        //Simulate RAM latency 
+        if (m_latency > 0)
+        {
+            try
+            {
+                Thread.sleep(0, m_latency);
+            }
+            catch(InterruptedException ie)
+            {/* do nothing*/ }
+        }
+        
+        System.arraycopy(src, off, m_mem, addr, len);
+    }//writeBlock
+
 };
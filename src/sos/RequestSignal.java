@@ -0,0 +1,158 @@
+package sos;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is the doorbell between the OS and a simulated device thread.
+ * The OS rings it when it records a request in the device's registers and
+ * the device thread waits on it while it has nothing to do.
+ *
+ * A waiting thread first spins for a configurable number of iterations (so a
+ * request that arrives right away is picked up without a trip through the
+ * host scheduler) and then parks until it is signalled.  A spin count of zero
+ * parks immediately, which is the right choice when many simulated devices
+ * share a handful of host cores.
+ *
+ * @see ConsoleDevice
+ * @see KeyboardDevice
+ */
+public class RequestSignal
+{
+    /**
+     * the default number of spin iterations before parking
+     */
+    public static final int DEFAULT_SPIN_COUNT = 1000;
+
+    /**
+     * set when a request is pending and cleared by the waiting thread
+     */
+    private volatile boolean m_signalled = false;
+
+    /**
+     * the thread that is currently waiting on this signal (if any)
+     */
+    private volatile Thread m_waiter = null;
+
+    /**
+     * how many times to poll m_signalled before parking
+     */
+    private int m_spinCount = DEFAULT_SPIN_COUNT;
+
+    /**
+     * This constructor uses the default spin-then-park policy
+     */
+    public RequestSignal()
+    {
+    }
+
+    /**
+     * This constructor expects the number of spin iterations that a waiting
+     * thread performs before it parks (0 = park immediately)
+     */
+    public RequestSignal(int spinCount)
+    {
+        setSpinCount(spinCount);
+    }//ctor
+
+    /**
+     * setSpinCount
+     *
+     * @param spinCount the number of spin iterations before parking.  Negative
+     *                  values are treated as zero.
+     */
+    public void setSpinCount(int spinCount)
+    {
+        m_spinCount = Math.max(0, spinCount);
+    }
+
+    /**
+     * getSpinCount
+     *
+     * @return the number of spin iterations before parking
+     */
+    public int getSpinCount()
+    {
+        return m_spinCount;
+    }
+
+    /**
+     * signal
+     *
+     * marks a request as pending and wakes the waiting thread (if any).
+     */
+    public void signal()
+    {
+        m_signalled = true;
+        Thread waiter = m_waiter;
+        if (waiter != null)
+        {
+            LockSupport.unpark(waiter);
+        }
+    }//signal
+
+    /**
+     * await
+     *
+     * blocks the calling thread until {@link #signal} has been called and then
+     * consumes the signal.  Only one thread may wait on a signal at a time.
+     */
+    public void await()
+    {
+        awaitNanos(0);
+    }//await
+
+    /**
+     * awaitNanos
+     *
+     * blocks the calling thread until {@link #signal} has been called or the
+     * given amount of time has elapsed.
+     *
+     * @param timeout the maximum time to wait in nanoseconds (0 = forever)
+     * @return true if a signal was consumed, false if the wait timed out
+     */
+    public boolean awaitNanos(long timeout)
+    {
+        //Spin briefly in case the request is about to arrive
+        for(int i = 0; i < m_spinCount; i++)
+        {
+            if (m_signalled)
+            {
+                m_signalled = false;
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+
+        //Park until signalled.  The flag is re-checked after m_waiter is
+        //published so a signal that races with us is never lost.
+        long deadline = System.nanoTime() + timeout;
+        m_waiter = Thread.currentThread();
+        try
+        {
+            while (!m_signalled)
+            {
+                if (timeout > 0)
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                else
+                {
+                    LockSupport.park(this);
+                }
+            }//while
+        }
+        finally
+        {
+            m_waiter = null;
+        }
+
+        m_signalled = false;
+        return true;
+    }//awaitNanos
+
+};//class RequestSignal
@@ -43,11 +43,67 @@ public class SOS implements CPU.TrapHandler
     public static final int CODE_NOT_OPENED = -4;
     public static final int CODE_NOT_WRITEABLE = -5;
     public static final int CODE_NOT_READABLE = -6;
+    public static final int CODE_BAD_ADDRESS = -7;
+    public static final int CODE_NOT_SUPPORTED = -8;
+    public static final int CODE_BROKEN_PIPE = -9;
+    public static final int CODE_NO_MEMORY = -10;
+    public static final int CODE_TRY_AGAIN = -11;
+    public static final int CODE_NO_THREAD = -12;
+    public static final int CODE_NO_CHILD = -13;
+    public static final int CODE_NO_PROGRAM = -14;
+    public static final int CODE_NOT_ADMITTED = -15;
+    public static final int CODE_BAD_ARGUMENT = -16;
     /// MultiPrograming 
     public static final int SYSCALL_EXEC    = 7;    /* spawn a new process */
     public static final int SYSCALL_YIELD   = 8;    /* yield the CPU to another process */
+    public static final int SYSCALL_WAIT    = 22;   /* wait for a child process to exit */
+    public static final int SYSCALL_SPAWN_N = 23;   /* start several copies of a program at once */
+    public static final int SPAWN_TICKS     = 5;    /* ticks to set up each process of a batch spawn */
+    public static final int SYSCALL_EXEC_ID = 27;   /* spawn a new process running a given program */
+    public static final int SYSCALL_EXIT_CODE = 28; /* exit, handing a code to the parent */
+    /// DMA
+    public static final int SYSCALL_READ_BLOCK  = 10;   /* read a range of words into RAM */
+    public static final int SYSCALL_WRITE_BLOCK = 11;   /* write a range of words from RAM */
+    /// Timers
+    public static final int SYSCALL_SLEEP   = 12;   /* block for a number of ticks */
+    /// Batched I/O
+    public static final int SYSCALL_RING_SUBMIT = 13;   /* submit a ring of requests with one trap */
+    public static final int RING_ENTRY_SIZE = 4;    /* words per submission entry (op, device, addr, data) */
+    public static final int RING_RESULT_SIZE = 2;   /* words per completion entry (status, value) */
+    /// Pipes
+    public static final int SYSCALL_PIPE    = 14;   /* open a pipe shared with other processes */
+    public static final int PIPE_BASE       = 0x40000000; /* set in every pipe descriptor and in no device id */
+    public static final int PIPE_CAPACITY   = 16;   /* values buffered per pipe */
+    /// Shared memory
+    public static final int SYSCALL_SHMGET  = 15;   /* find or create a shared segment */
+    public static final int SYSCALL_SHMAT   = 16;   /* map a shared segment at CPU.SHM_ADDR */
+    public static final int SYSCALL_SHMDT   = 17;   /* unmap the shared segment */
+    public static final int SYSCALL_SBRK    = 24;   /* grow or shrink the process' memory */
+    /// Futexes
+    public static final int SYSCALL_FUTEX_WAIT = 18;    /* block while a word holds a value */
+    public static final int SYSCALL_FUTEX_WAKE = 19;    /* wake processes blocked on a word */
     /// Threads
     public static final int IDLE_PROC_ID    = 999;  
+    public static final int SYSCALL_THREAD_CREATE = 20; /* start a thread in the caller's memory */
+    public static final int SYSCALL_THREAD_JOIN   = 21; /* wait for a thread to exit */
+    public static final int THREAD_STACK_SIZE = 32; /* words of stack carved for each thread */
+    /// Accounting
+    public static final int QUOTA_WINDOW    = 10000; /* ticks between resets of the per-process quotas */
+    public static final int GROUP_SLICE     = 200;  /* weighted ticks a group may run ahead of the others */
+    /// Real-time
+    public static final int SYSCALL_SET_REALTIME = 25;  /* join (or leave) the real-time class */
+    public static final int SYSCALL_NEXT_PERIOD  = 26;  /* finish this period's work and wait for the next */
+    public static final int RT_UTILIZATION  = 90;   /* percent of the CPU real-time processes may reserve */
+    /// Buffer Cache
+    public static final int CACHE_FRAMES    = 32;   /* blocks cached per disk */
+    public static final int FLUSH_INTERVAL  = 2000; /* ticks between flusher passes */
+    public static final int DIRTY_EXPIRE    = 1000; /* ticks a block stays dirty before it is flushed */
+    /// Type-ahead
+    public static final int TYPEAHEAD_SIZE  = 16;   /* values buffered per keyboard */
+    /// Adaptive polling
+    public static final int POLL_WINDOW     = 1000; /* ticks over which completion rates are measured */
+    public static final int POLL_ENTER_RATE = 20;   /* completions per window that switch a device to polling */
+    public static final int POLL_EXIT_RATE  = 5;    /* completions per window that switch it back */
 
     //======================================================================
     //Member variables
@@ -80,6 +136,12 @@ public class SOS implements CPU.TrapHandler
      **/
     private Vector<DeviceInfo> m_devices = null;
     
+    /**
+     * The same devices as m_devices indexed by device id so that system calls
+     * and interrupts can find a device without scanning the whole list
+     **/
+    private HashMap<Integer, DeviceInfo> m_deviceTable = null;
+    
     /**
      * a Vector of all the Program objects (not processes!) that are available 
      * to the operating system.
@@ -105,6 +167,128 @@ public class SOS implements CPU.TrapHandler
      */
     Vector<ProcessControlBlock> m_processes = null;
     
+    /**
+     * The policy used to order the pending requests of each disk device (one
+     * of the IOScheduler.POLICY constants)
+     */
+    private int m_diskPolicy = IOScheduler.POLICY_FCFS;
+    
+    /**
+     * The CPU ticks and I/O words each process may use per QUOTA_WINDOW
+     * ticks (0 means no limit), when the current window began and how many
+     * times a process was held back for the rest of a window for being over
+     * its quota
+     */
+    private int m_cpuQuota = 0;
+    private int m_ioQuota = 0;
+    private int m_windowStart = 0;
+    private int m_throttled = 0;
+    
+    /**
+     * true while the clock interrupt is choosing the next process (a switch
+     * away from a process that is still ready is then involuntary)
+     */
+    private boolean m_preempting = false;
+    
+    /**
+     * The process groups indexed by group id
+     */
+    private HashMap<Integer, GroupInfo> m_groups = new HashMap<Integer, GroupInfo>();
+    
+    /**
+     * Scratch list for the groups that are competing for the CPU
+     */
+    private Vector<GroupInfo> m_competing = new Vector<GroupInfo>();
+    
+    /**
+     * Real-time statistics: periods that have ended and how many of them
+     * ended before their process finished its work
+     */
+    private long m_rtPeriods = 0;
+    private long m_deadlineMisses = 0;
+    
+    /**
+     * The CPU tick when the buffer cache flusher last ran
+     */
+    private int m_lastFlush = 0;
+    
+    /**
+     * The CPU tick when the current completion rate window started
+     */
+    private int m_pollWindowStart = 0;
+    
+    /**
+     * The system timer that sleeping processes are blocked on
+     */
+    private TimerDevice m_timer = new TimerDevice();
+    
+    /**
+     * The pending sleep deadlines
+     */
+    private TimingWheel m_timers = new TimingWheel(0);
+    
+    /**
+     * Scratch list for the processes whose timers expire
+     */
+    private Vector<Object> m_expired = new Vector<Object>();
+    
+    /**
+     * Submission ring statistics: traps that submitted a ring and the
+     * requests they carried
+     */
+    private int m_ringSubmits = 0;
+    private int m_ringEntries = 0;
+    
+    /**
+     * The system calls this OS handles, indexed by call number
+     */
+    private SyscallTable m_syscalls = new SyscallTable();
+    
+    /**
+     * The open pipes indexed by descriptor
+     */
+    private HashMap<Integer, Pipe> m_pipeTable = new HashMap<Integer, Pipe>();
+    
+    /**
+     * The descriptor that will be given to the next pipe
+     */
+    private int m_nextPipeId = PIPE_BASE;
+    
+    /**
+     * The shared memory segments indexed by segment id
+     */
+    private Vector<SegmentInfo> m_segments = new Vector<SegmentInfo>();
+    
+    /**
+     * The processes waiting on futex words
+     */
+    private FutexTable m_futexes = new FutexTable();
+    
+    /**
+     * Scratch list for the processes a futex wake releases
+     */
+    private Vector<Object> m_woken = new Vector<Object>();
+    
+    /**
+     * The device processes waiting for another process to exit are
+     * blocked on
+     */
+    private WaitDevice m_exitWaits = new WaitDevice();
+    
+    /**
+     * Thread statistics: threads started and joins that had to wait
+     */
+    private int m_threadsCreated = 0;
+    private int m_joinWaits = 0;
+    
+    /**
+     * Heap statistics: SBRK calls, how many moved the process and the words
+     * copied to move them
+     */
+    private int m_sbrks = 0;
+    private int m_relocations = 0;
+    private long m_wordsMoved = 0;
+    
     /*======================================================================
      * Constructors & Debugging
      *----------------------------------------------------------------------
@@ -121,10 +305,12 @@ public class SOS implements CPU.TrapHandler
         m_CPU.registerTrapHandler(this);
         m_currProcess = new ProcessControlBlock(42);
         m_devices = new Vector<DeviceInfo>(0);
+        m_deviceTable = new HashMap<Integer, DeviceInfo>();
         m_programs = new Vector<Program>();
         m_nextLoadPos = 0;
         m_nextProcessID = 1001;
         m_processes = new Vector<ProcessControlBlock>();
+        registerSyscalls();
         
     }//SOS ctor
     
@@ -162,219 +348,1376 @@ public class SOS implements CPU.TrapHandler
      *----------------------------------------------------------------------
      */
 
-    //None yet!
-    
-    /*======================================================================
-     * Process Management Methods
-     *----------------------------------------------------------------------
-     */
-
     /**
-     * createIdleProcess
+     * findDevice
      *
-     * creates a one instruction process that immediately exits.  This is used
-     * to buy time until device I/O completes and unblocks a legitimate
-     * process.
+     * looks up a registered device by its id
      *
+     * @param devID the id of the device
+     * @return the DeviceInfo for the device -OR- null if there is no such device
      */
-    public void createIdleProcess()
+    private DeviceInfo findDevice(int devID)
     {
-        int progArr[] = { 0, 0, 0, 0,   //SET r0=0
-                          0, 0, 0, 0,   //SET r0=0 (repeated instruction to account for vagaries in student implementation of the CPU class)
-                         10, 0, 0, 0,   //PUSH r0
-                         15, 0, 0, 0 }; //TRAP
-
-        //Initialize the starting position for this program
-        int baseAddr = m_nextLoadPos;
-
-        //Load the program into RAM
-        for(int i = 0; i < progArr.length; i++)
+        return m_deviceTable.get(devID);
+    }//findDevice
+    
+    /**
+     * checkDeviceAddress
+     *
+     * @param di   a device
+     * @param addr an address on the device
+     * @return false if the device is a disk and the address is not on it
+     */
+    private boolean checkDeviceAddress(DeviceInfo di, int addr)
+    {
+        if (di.getDevice() instanceof DiskDevice)
         {
-            m_RAM.write(baseAddr + i, progArr[i]);
+            DiskDevice disk = (DiskDevice)di.getDevice();
+            return (addr >= 0) && (addr < disk.getCapacity());
         }
-
-        //Save the register info from the current process (if there is one)
-        if (m_currProcess != null)
+        return true;
+    }//checkDeviceAddress
+    
+    /**
+     * setDiskSchedulingPolicy
+     *
+     * selects the order in which pending disk requests are served.  This
+     * applies to disks that are already registered and to any that are
+     * registered later.
+     *
+     * @param policy one of the IOScheduler.POLICY constants
+     */
+    public void setDiskSchedulingPolicy(int policy)
+    {
+        m_diskPolicy = policy;
+        for(DeviceInfo di : m_devices)
         {
-            m_currProcess.save(m_CPU);
+            if (di.getDevice() instanceof DiskDevice)
+            {
+                di.scheduler.setPolicy(policy);
+            }
         }
-        
-        //Set the appropriate registers
-        m_CPU.setPC(baseAddr);
-        m_CPU.setSP(baseAddr + progArr.length + 10);
-        m_CPU.setBASE(baseAddr);
-        m_CPU.setLIM(baseAddr + progArr.length + 20);
-
-        //Save the relevant info as a new entry in m_processes
-        m_currProcess = new ProcessControlBlock(IDLE_PROC_ID);  
-        m_processes.add(m_currProcess);
-
-    }//createIdleProcess
-
+    }//setDiskSchedulingPolicy
+    
     /**
-     * printProcessTable      **DEBUGGING**
+     * setGroupWeight
      *
-     * prints all the processes in the process table
+     * sets the share of the CPU a process group gets relative to the other
+     * groups.  A group is named by the id of the process that started it
+     * (processes started by EXEC, SPAWN_N or THREAD_CREATE join the group of
+     * the process that started them).  Groups have a weight of 1 unless this
+     * is called.
+     *
+     * @param group  the group id
+     * @param weight the weight
+     *
+     * @throws IllegalArgumentException if the weight is not positive
      */
-    private void printProcessTable()
+    public void setGroupWeight(int group, int weight)
     {
-        debugPrintln("");
-        debugPrintln("Process Table (" + m_processes.size() + " processes)");
-        debugPrintln("======================================================================");
-        for(ProcessControlBlock pi : m_processes)
+        if (weight <= 0)
         {
-            debugPrintln("    " + pi);
-        }//for
-        debugPrintln("----------------------------------------------------------------------");
-
-    }//printProcessTable
-
-	/**
-	 * removeCurrentProcess
-	 * 
-	 * removes the current processes from m_processes
-	 * and calls scheduleNewProcess to pick a new one
-	 */
-    public void removeCurrentProcess()
-    {
-    	printProcessTable();
-    	m_processes.remove(m_currProcess);
-    }//removeCurrentProcess
-
+            throw new IllegalArgumentException("group weight " + weight
+                                               + " is not positive");
+        }
+        getGroup(group).weight = weight;
+    }//setGroupWeight
+    
     /**
-     * getRandomProcess
+     * getGroup
      *
-     * selects a non-Blocked process at random from the ProcessTable.
+     * finds a process group, creating it if it does not exist.  A new group
+     * starts level with the groups of the current processes so that it
+     * does not get the CPU to itself until it catches up.
      *
-     * @return a reference to the ProcessControlBlock struct of the selected process
-     * -OR- null if no non-blocked process exists
+     * @param id the group id
+     * @return the group
      */
-    ProcessControlBlock getRandomProcess()
+    private GroupInfo getGroup(int id)
     {
-        //Calculate a random offset into the m_processes list
-        int offset = ((int)(Math.random() * 2147483647)) % m_processes.size();
-            
-        //Iterate until a non-blocked process is found
-        ProcessControlBlock newProc = null;
-        for(int i = 0; i < m_processes.size(); i++)
+        GroupInfo g = m_groups.get(id);
+        if (g == null)
         {
-            newProc = m_processes.get((i + offset) % m_processes.size());
-            if ( ! newProc.isBlocked())
+            g = new GroupInfo(id);
+            boolean found = false;
+            for(ProcessControlBlock pi : m_processes)
             {
-                return newProc;
+                GroupInfo other = m_groups.get(pi.group);
+                if ((other != null) && (!found || (other.pass < g.pass)))
+                {
+                    g.pass = other.pass;
+                    found = true;
+                }
             }
-        }//for
-
-        return null;        // no processes are Ready
-    }//getRandomProcess
+            m_groups.put(id, g);
+        }
+        return g;
+    }//getGroup
     
     /**
-     * getFairProcess
+     * setQuotas
      *
-     * selects a non-Blocked process with the smallest average starve time.
+     * limits how much each process may use in every QUOTA_WINDOW ticks.  A
+     * process that has used up either quota is not scheduled again until
+     * the next window begins.
      *
-     * @return a reference to the ProcessControlBlock struct of the selected process
-     * -OR- null if no non-blocked process exists
+     * @param cpuTicks the CPU ticks per window (0 for no limit)
+     * @param ioWords  the words read or written per window (0 for no limit)
      */
-    ProcessControlBlock getFairProcess()
+    public void setQuotas(int cpuTicks, int ioWords)
     {
-    	int index = -1; 
-    	double avgStarve = Integer.MAX_VALUE;    	
-    	for(int i = 0; i < m_processes.size(); i++)
-    	{
-    		if(avgStarve > m_processes.get(i).avgStarve && !m_processes.get(i).isBlocked())
-    		{
-    			avgStarve = m_processes.get(i).avgStarve;
-    			index = i;
-    		}
-    	}
-    	if (avgStarve == Integer.MAX_VALUE)
-    	{
-    		return null;
-    	}
-    	
-		return m_processes.get(index);
-    }
+        m_cpuQuota = cpuTicks;
+        m_ioQuota = ioWords;
+    }//setQuotas
     
-	/**
-	 * scheduleNewProcess
-	 * 
-	 * Selects a new process to run and runs it
-	 */
-    public void scheduleNewProcess()
-    {
-    	if (m_processes.isEmpty())
-    	{
-
-    		//debugPrintln("No more processes to run. Stopping.");
-    		System.exit(CODE_SUCCESS);
-    	}
-    	int i = 1;
-    	ProcessControlBlock temp;
-    	switch (i)
-    	{
-    	case 0: 
-    		temp = getRandomProcess();
-    		break;
-    	case 1: 
-    		temp = getFairProcess();
-    		break;
-		default:
-	    	temp = getRandomProcess();
-	    	break;
-    	}
-    	if(temp == null)
-    	{
-    		createIdleProcess();
-    		return;
-    	}	
-    	if(!temp.equals(m_currProcess))
-    	{
-	    	m_currProcess.save(m_CPU);
-	    	m_currProcess = temp;
-	    	m_currProcess.restore(m_CPU);
-    	}
-    }//scheduleNewProcess
-
     /**
-     * addProgram
+     * chargeIO
      *
-     * registers a new program with the simulated OS that can be used when the
-     * current process makes an Exec system call.  (Normally the program is
-     * specified by the process via a filename but this is a simulation so the
-     * calling process doesn't actually care what program gets loaded.)
-     *
-     * @param prog  the program to add
+     * adds an I/O request to a process' accounting
      *
+     * @param owner the process that made the request
+     * @param words the number of words it moves
      */
-    public void addProgram(Program prog)
+    private void chargeIO(Object owner, int words)
     {
-        m_programs.add(prog);
-    }//addProgram  
+        ProcessControlBlock pcb = (ProcessControlBlock)owner;
+        pcb.ioRequests++;
+        pcb.ioWords += words;
+        pcb.windowIO += words;
+    }//chargeIO
     
-    /*======================================================================
-     * Program Management Methods
-     *----------------------------------------------------------------------
+    /**
+     * isOverQuota
+     *
+     * @param pcb a process
+     * @return true if the process has used up a quota in the current window
      */
-
+    private boolean isOverQuota(ProcessControlBlock pcb)
+    {
+        return ((m_cpuQuota > 0) && (pcb.getWindowTicks() >= m_cpuQuota))
+            || ((m_ioQuota > 0) && (pcb.windowIO >= m_ioQuota));
+    }//isOverQuota
+    
     /**
-     * createProcess()
-     * 
-     * @param prog 
-     * @param size total allocated ram for the program
-     * 
-     * Helper method to initialize system registers with appropriate values
+     * startQuotaWindow
+     *
+     * starts a new quota window if the current one has ended
+     *
+     * @return true if a new window was started
      */
-    public void createProcess(Program prog, int allocSize)
-    {       
+    private boolean startQuotaWindow()
+    {
+        if (m_CPU.getTicks() - m_windowStart < QUOTA_WINDOW)
+        {
+            return false;
+        }
+        m_windowStart = m_CPU.getTicks();
+        for(ProcessControlBlock pi : m_processes)
+        {
+            pi.windowTicks = 0;
+            pi.windowIO = 0;
+            pi.throttled = false;
+        }
+        return true;
+    }//startQuotaWindow
+    
+    /**
+     * idleUntilQuotaWindow
+     *
+     * called when no process is ready.  If a process is only waiting for
+     * its quotas to be reset the clock is moved straight to the end of the
+     * window.  As in {@link #idleUntilTimer} the clock is left alone while
+     * any process is waiting for I/O that may finish sooner.
+     *
+     * @return true if a process can run again
+     */
+    private boolean idleUntilQuotaWindow()
+    {
+        for(ProcessControlBlock pi : m_processes)
+        {
+            if (pi.isBlocked() && !pi.isBlockedForDevice(m_timer, SYSCALL_SLEEP, -1))
+            {
+                return false;       // waiting for I/O that may finish sooner
+            }
+        }
+        
+        for(ProcessControlBlock pi : m_processes)
+        {
+            if (!pi.isBlocked() && isOverQuota(pi))
+            {
+                int end = m_windowStart + QUOTA_WINDOW;
+                if (end > m_CPU.getTicks())
+                {
+                    skipTicks(end - m_CPU.getTicks());
+                }
+                return startQuotaWindow();
+            }
+        }
+        return false;
+    }//idleUntilQuotaWindow
+    
+    /**
+     * startWordIO
+     *
+     * starts a read or write of a single word.  Disks are served through
+     * their buffer cache and character devices through their type-ahead
+     * buffer.  Anything else is queued on the device.  The process that
+     * made the request is not blocked here.
+     *
+     * @param di    the device
+     * @param w     the request (the value read is stored in w.data if it
+     *              completes right away)
+     *
+     * @return true if the request completed, false if it will be finished
+     *         by {@link #completeWordRequest} once the device responds
+     */
+    private boolean startWordIO(DeviceInfo di, IOScheduler.Request w)
+    {
+        chargeIO(w.owner, 1);
+        if (di.cache != null)
+        {
+            return cachedIO(di, w);
+        }
+        if ((di.typeAhead != null) && (w.op == SYSCALL_READ))
+        {
+            return typeAheadRead(di, w);
+        }
+        
+        di.scheduler.add(w, m_CPU.getTicks());
+        dispatchIO(di);
+        return false;
+    }//startWordIO
+    
+    /**
+     * dispatchIO
+     *
+     * issues the next pending request to a device if the device is idle
+     *
+     * @param di the device
+     */
+    private void dispatchIO(DeviceInfo di)
+    {
+        if ((di.inFlight != null) || !di.getDevice().isAvailable())
+        {
+            return;
+        }
+        
+        IOScheduler.Request req = di.scheduler.next(m_CPU.getTicks());
+        if (req == null)
+        {
+            return;
+        }
+        
+        di.inFlight = req;
+        if (req.buffer != null)
+        {
+            DMADevice dma = (DMADevice)di.getDevice();
+            if (req.op == SYSCALL_WRITE)
+            {
+                dma.writeBulk(req.addr, req.buffer, req.offset, req.length);
+            }
+            else
+            {
+                dma.readBulk(req.addr, req.buffer, req.offset, req.length);
+            }
+        }
+        else if (req.op == SYSCALL_WRITE)
+        {
+            di.getDevice().write(req.addr, req.data);
+        }
+        else
+        {
+            di.getDevice().read(req.addr);
+        }
+    }//dispatchIO
+    
+    /**
+     * completeIO
+     *
+     * retires the in-flight request of a device after its completion
+     * interrupt and issues the next pending request (if any)
+     *
+     * @param di the device
+     * @return the request that completed -OR- null if none was in flight
+     */
+    private IOScheduler.Request completeIO(DeviceInfo di)
+    {
+        IOScheduler.Request req = di.inFlight;
+        di.inFlight = null;
+        if (req != null)
+        {
+            di.scheduler.complete(req, m_CPU.getTicks());
+        }
+        dispatchIO(di);
+        
+        return req;
+    }//completeIO
+    
+    /**
+     * handleIOCompletion
+     *
+     * common code for the read and write completion interrupts.  Retires the
+     * device's in-flight request, issues its next one and then wakes whoever
+     * was waiting for the request that completed.
+     *
+     * @param devID the ID of the device that completed its operation
+     * @param data  the data that were read (reads only)
+     */
+    private void handleIOCompletion(int devID, int data)
+    {
+        DeviceInfo di = findDevice(devID);
+        if (di == null)
+        {
+            debugPrintln("Completion from unknown device #" + devID);
+            return;
+        }
+        
+        di.windowCompletions++;
+        IOScheduler.Request req = completeIO(di);
+        if (req == null)
+        {
+            debugPrintln("Unexpected completion from device #" + devID);
+            return;
+        }
+        
+        switch(req.kind)
+        {
+            case IOScheduler.KIND_FILL:
+                //The block is now in the cache so serve everyone waiting for it
+                int frame = ((Integer)req.context).intValue();
+                di.cache.fillComplete(frame);
+                for(IOScheduler.Request w : req.waiters)
+                {
+                    int value = 0;
+                    if (w.op == SYSCALL_READ)
+                    {
+                        value = di.cache.read(frame, w.addr);
+                    }
+                    else
+                    {
+                        di.cache.write(frame, w.addr, w.data, m_CPU.getTicks());
+                    }
+                    completeWordRequest(w, CODE_SUCCESS, value);
+                }
+                break;
+                
+            case IOScheduler.KIND_WRITEBACK:
+                di.cache.writebackComplete((BufferCache.Writeback)req.context,
+                                           m_CPU.getTicks());
+                break;
+                
+            case IOScheduler.KIND_TYPEAHEAD:
+                //Hand the value to the oldest waiting reader or buffer it
+                di.typeAhead.setFilling(false);
+                if (!di.typeAheadWaiters.isEmpty())
+                {
+                    completeWordRequest(di.typeAheadWaiters.remove(0), CODE_SUCCESS, data);
+                }
+                else
+                {
+                    di.typeAhead.put(data);
+                }
+                fillTypeAhead(di);
+                break;
+                
+            case IOScheduler.KIND_DMA:
+                //Move the data into the process' buffer with a single copy
+                ProcessControlBlock owner = (ProcessControlBlock)req.owner;
+                owner.unblock();
+                if (req.op == SYSCALL_READ)
+                {
+                    if (di.cache != null)
+                    {
+                        di.cache.overlay(req.addr, req.buffer, 0, req.length);
+                    }
+                    m_RAM.writeBlock(req.memAddr, req.buffer, 0, req.length);
+                }
+                else if (di.cache != null)
+                {
+                    di.cache.directWriteComplete((BufferCache.DirectWrite)req.context);
+                }
+                pushToProcessStack(owner, CODE_SUCCESS);
+                break;
+                
+            default:
+                completeWordRequest(req, CODE_SUCCESS, data);
+                break;
+        }//switch
+    }//handleIOCompletion
+    
+    /**
+     * completeWordRequest
+     *
+     * returns the result of a single word read or write to whoever asked
+     * for it.  A request made by a system call unblocks its process and
+     * pushes the value read (reads only) and the status onto its stack.  A
+     * request from a submission ring posts the result to its completion
+     * entry instead and the process is only unblocked once every entry of
+     * the ring has completed.
+     *
+     * @param w      the request
+     * @param status the status code
+     * @param value  the value read (ignored for writes)
+     */
+    private void completeWordRequest(IOScheduler.Request w, int status, int value)
+    {
+        if (w.context instanceof RingBatch)
+        {
+            ((RingBatch)w.context).complete(w.slot, status, value);
+            return;
+        }
+        
+        ProcessControlBlock owner = (ProcessControlBlock)w.owner;
+        owner.unblock();
+        if ((w.op == SYSCALL_READ) && (status == CODE_SUCCESS))
+        {
+            pushToProcessStack(owner, value);
+        }
+        pushToProcessStack(owner, status);
+    }//completeWordRequest
+    
+    /**
+     * cachedIO
+     *
+     * serves a read or write of a single word on a disk through the disk's
+     * buffer cache.  A hit completes immediately.  A miss allocates a frame,
+     * starts reading the block into it and queues the request until the
+     * block arrives, when it is finished by {@link #completeWordRequest}.
+     * Sequential access triggers a read of the following block.
+     *
+     * @param di    the disk
+     * @param w     the request (the value read is stored in w.data on a hit)
+     *
+     * @return true if the request completed, false if it has to wait (the
+     *         caller must then block the process that made it)
+     */
+    private boolean cachedIO(DeviceInfo di, IOScheduler.Request w)
+    {
+        BufferCache cache = di.cache;
+        int now = m_CPU.getTicks();
+        int block = DiskDevice.blockOf(w.addr);
+        int frame = cache.lookup(block);
+        boolean sequential = cache.recordAccess(block, (frame >= 0) && !cache.isFilling(frame));
+        
+        //Bring the block into the cache if necessary
+        if (frame < 0)
+        {
+            frame = cache.allocate(block, now);
+            if (frame < 0)
+            {
+                //Every frame is waiting for the disk so bypass the cache
+                di.scheduler.add(w, now);
+                dispatchIO(di);
+                return false;
+            }
+            if (cache.isFilling(frame))
+            {
+                startFill(di, frame, block);
+            }
+        }
+        
+        boolean done = !cache.isFilling(frame);
+        if (done)
+        {
+            if (w.op == SYSCALL_READ)
+            {
+                w.data = cache.read(frame, w.addr);
+            }
+            else
+            {
+                cache.write(frame, w.addr, w.data, now);
+            }
+        }
+        else
+        {
+            //Wait for the block to arrive
+            IOScheduler.Request fill = (IOScheduler.Request)cache.getFillRequest(frame);
+            fill.waiters.add(w);
+        }
+        
+        //Read the next block ahead of a sequential reader
+        if (sequential)
+        {
+            readAhead(di, block + 1);
+        }
+        
+        issueWritebacks(di);
+        return done;
+    }//cachedIO
+    
+    /**
+     * startFill
+     *
+     * queues a request to read a block from the disk straight into a
+     * buffer cache frame
+     *
+     * @param di    the disk
+     * @param frame the frame (must be FILLING)
+     * @param block the block to read
+     */
+    private void startFill(DeviceInfo di, int frame, int block)
+    {
+        IOScheduler.Request req = new IOScheduler.Request(SYSCALL_READ,
+                                        block * BufferCache.BLOCK, 0, null);
+        req.kind = IOScheduler.KIND_FILL;
+        req.buffer = di.cache.getPool();
+        req.offset = di.cache.offsetOf(frame);
+        req.length = BufferCache.BLOCK;
+        req.context = Integer.valueOf(frame);
+        req.waiters = new Vector<IOScheduler.Request>();
+        di.cache.setFillRequest(frame, req);
+        di.scheduler.add(req, m_CPU.getTicks());
+        dispatchIO(di);
+    }//startFill
+    
+    /**
+     * readAhead
+     *
+     * speculatively starts reading a block into the cache
+     *
+     * @param di    the disk
+     * @param block the block to read
+     */
+    private void readAhead(DeviceInfo di, int block)
+    {
+        DiskDevice disk = (DiskDevice)di.getDevice();
+        if ((block >= disk.getNumBlocks()) || (di.cache.lookup(block) >= 0))
+        {
+            return;
+        }
+        
+        int frame = di.cache.allocate(block, m_CPU.getTicks());
+        if (frame < 0)
+        {
+            return;
+        }
+        di.cache.recordReadAhead();
+        if (di.cache.isFilling(frame))
+        {
+            startFill(di, frame, block);
+        }
+    }//readAhead
+    
+    /**
+     * issueWritebacks
+     *
+     * queues a disk write for every dirty block the cache wants written back
+     *
+     * @param di the disk
+     */
+    private void issueWritebacks(DeviceInfo di)
+    {
+        BufferCache.Writeback wb;
+        while ((wb = di.cache.takeWriteback()) != null)
+        {
+            IOScheduler.Request req = new IOScheduler.Request(SYSCALL_WRITE,
+                                        wb.block * BufferCache.BLOCK, 0, null);
+            req.kind = IOScheduler.KIND_WRITEBACK;
+            req.buffer = wb.data;
+            req.length = BufferCache.BLOCK;
+            req.context = wb;
+            di.scheduler.add(req, m_CPU.getTicks());
+        }
+        dispatchIO(di);
+    }//issueWritebacks
+    
+    /**
+     * fillTypeAhead
+     *
+     * asks a character device for its next value if its type-ahead buffer
+     * has room and no request for it is outstanding
+     *
+     * @param di the device
+     */
+    private void fillTypeAhead(DeviceInfo di)
+    {
+        if (di.typeAhead.isFilling() || di.typeAhead.isFull())
+        {
+            return;
+        }
+        
+        IOScheduler.Request req = new IOScheduler.Request(SYSCALL_READ, 0, 0, null);
+        req.kind = IOScheduler.KIND_TYPEAHEAD;
+        di.typeAhead.setFilling(true);
+        di.scheduler.add(req, m_CPU.getTicks());
+        dispatchIO(di);
+    }//fillTypeAhead
+    
+    /**
+     * typeAheadRead
+     *
+     * serves a read from a character device through its type-ahead buffer.
+     * If a value is buffered the read completes immediately.  Otherwise the
+     * request waits for the device to produce the next value.
+     *
+     * @param di the device
+     * @param w  the request (the value read is stored in w.data on a hit)
+     * @return true if the read completed, false if it has to wait (the
+     *         caller must then block the process that made it)
+     */
+    private boolean typeAheadRead(DeviceInfo di, IOScheduler.Request w)
+    {
+        boolean hit = !di.typeAhead.isEmpty();
+        di.typeAhead.recordRead(hit);
+        if (hit)
+        {
+            w.data = di.typeAhead.take();
+        }
+        else
+        {
+            di.typeAheadWaiters.add(w);
+        }
+        fillTypeAhead(di);
+        
+        return hit;
+    }//typeAheadRead
+    
+    /**
+     * expireTimers
+     *
+     * advances the timing wheel to the current tick and makes every process
+     * whose sleep has ended ready again
+     *
+     * @return true if any process woke up
+     */
+    private boolean expireTimers()
+    {
+        if (m_timers.advance(m_CPU.getTicks(), m_expired) == 0)
+        {
+            return false;
+        }
+        for(Object owner : m_expired)
+        {
+            ((ProcessControlBlock)owner).unblock();
+        }
+        m_expired.clear();
+        return true;
+    }//expireTimers
+    
+    /**
+     * chargeGroups
+     *
+     * charges CPU time to the group of the process that used it.  Every
+     * group that had a process ready to run at the same time is credited
+     * with the time as well, along with the part of it that its weight
+     * entitled it to, so the share each group got while it was competing
+     * can be compared with its target.
+     *
+     * @param id the group of the process that used the time
+     * @param n  the number of ticks
+     */
+    private void chargeGroups(int id, int n)
+    {
+        GroupInfo charged = getGroup(id);
+        charged.charge(n);
+        
+        m_competing.clear();
+        m_competing.add(charged);
+        int weights = charged.weight;
+        for(ProcessControlBlock pi : m_processes)
+        {
+            GroupInfo g = getGroup(pi.group);
+            if (!pi.isBlocked() && !m_competing.contains(g))
+            {
+                m_competing.add(g);
+                weights += g.weight;
+            }
+        }
+        for(GroupInfo g : m_competing)
+        {
+            g.available += n;
+            g.entitled += (double)n * g.weight / weights;
+        }
+    }//chargeGroups
+    
+    /**
+     * printGroupShares
+     *
+     * prints the share of the CPU each process group got while it was
+     * competing for it and the share its weight entitled it to
+     */
+    private void printGroupShares()
+    {
+        for(GroupInfo g : m_groups.values())
+        {
+            if ((g.id != IDLE_PROC_ID) && (g.available > 0))
+            {
+                debugPrintln("Group " + g + ", "
+                             + String.format("%.1f", 100.0 * g.ticks / g.available)
+                             + "% of the CPU while competing (target "
+                             + String.format("%.1f", 100.0 * g.entitled / g.available) + "%)");
+            }
+        }
+    }//printGroupShares
+    
+    /**
+     * skipTicks
+     *
+     * moves the clock forward while no process is ready.  The process that
+     * was last on the CPU is not charged for the ticks.
+     *
+     * @param ticks the number of ticks
+     */
+    private void skipTicks(int ticks)
+    {
+        m_CPU.addTicks(ticks);
+        m_currProcess.dispatchTime += ticks;
+    }//skipTicks
+    
+    /**
+     * idleUntilTimer
+     *
+     * called when no process is ready.  If every blocked process is
+     * sleeping there is nothing that could wake one up before the next timer
+     * deadline, so instead of running the idle process over and over the
+     * clock is moved straight to that deadline.
+     *
+     * @return true if a process woke up
+     */
+    private boolean idleUntilTimer()
+    {
+        if (m_timers.size() == 0)
+        {
+            return false;
+        }
+        for(ProcessControlBlock pi : m_processes)
+        {
+            if (pi.isBlocked() && !pi.isBlockedForDevice(m_timer, SYSCALL_SLEEP, -1))
+            {
+                return false;       // waiting for I/O that may finish sooner
+            }
+        }
+        
+        while (m_timers.size() > 0)
+        {
+            long next = m_timers.nextEvent();
+            if (next > m_CPU.getTicks())
+            {
+                skipTicks((int)(next - m_CPU.getTicks()));
+            }
+            if (expireTimers())
+            {
+                return true;
+            }
+        }
+        return false;
+    }//idleUntilTimer
+    
+    /**
+     * pollDevices
+     *
+     * collects the completions of every device that is in polling mode and
+     * handles them as if their interrupts had arrived.  At the end of each
+     * POLL_WINDOW it also moves devices between interrupt and polling mode
+     * according to how many completions they produced during the window.
+     * Called from the clock interrupt.
+     */
+    private void pollDevices()
+    {
+        InterruptController ic = m_CPU.getInterruptController();
+        for(DeviceInfo di : m_devices)
+        {
+            if (di.polling)
+            {
+                int[][] batch = ic.poll(di.getId());
+                di.interruptsAvoided += batch.length;
+                for(int[] intData : batch)
+                {
+                    handleIOCompletion(di.getId(), intData[3]);
+                }
+            }
+        }//for
+        
+        int now = m_CPU.getTicks();
+        if (now - m_pollWindowStart < POLL_WINDOW)
+        {
+            return;
+        }
+        m_pollWindowStart = now;
+        
+        for(DeviceInfo di : m_devices)
+        {
+            if (!di.polling && (di.windowCompletions >= POLL_ENTER_RATE))
+            {
+                //Too many interrupts: stop taking them and poll instead
+                ic.mask(di.getId());
+                di.polling = true;
+                di.pollEnters++;
+                debugPrintln("Device #" + di.getId() + " switched to polling");
+            }
+            else if (di.polling && (di.windowCompletions < POLL_EXIT_RATE))
+            {
+                ic.unmask(di.getId());
+                di.polling = false;
+                di.pollExits++;
+                debugPrintln("Device #" + di.getId() + " switched to interrupts");
+            }
+            di.windowCompletions = 0;
+        }//for
+    }//pollDevices
+    
+    /**
+     * flushBufferCaches
+     *
+     * the buffer cache flusher.  Writes back blocks that have been dirty for
+     * at least DIRTY_EXPIRE ticks.  Called from the clock interrupt.
+     */
+    private void flushBufferCaches()
+    {
+        int now = m_CPU.getTicks();
+        if (now - m_lastFlush < FLUSH_INTERVAL)
+        {
+            return;
+        }
+        m_lastFlush = now;
+        
+        for(DeviceInfo di : m_devices)
+        {
+            if ((di.cache != null) && (di.cache.flushDirty(now, DIRTY_EXPIRE) > 0))
+            {
+                issueWritebacks(di);
+            }
+        }
+    }//flushBufferCaches
+    
+    /**
+     * flushConsoles
+     *
+     * makes sure the output of every console has reached its destination
+     */
+    private void flushConsoles()
+    {
+        for(DeviceInfo di : m_devices)
+        {
+            if (di.getDevice() instanceof ConsoleDevice)
+            {
+                ((ConsoleDevice)di.getDevice()).flush();
+            }
+        }
+    }//flushConsoles
+    
+    /**
+     * printIOStats
+     *
+     * prints the request statistics of every device that has served a request
+     */
+    private void printIOStats()
+    {
+        debugPrintln("System calls: " + m_syscalls);
+        long kernelNanos = Math.max(1, m_syscalls.getTotalNanos());
+        for(int i = 0; i < SyscallTable.MAX_SYSCALLS; i++)
+        {
+            SyscallTable.Entry call = m_syscalls.lookup(i);
+            if ((call != null) && (call.getInvocations() > 0))
+            {
+                debugPrintln("    " + call + " ("
+                             + (100 * call.getNanos() / kernelNanos) + "% of kernel time)");
+            }
+        }
+        debugPrintln("Interrupts: " + m_CPU.getInterruptController());
+        debugPrintln("Timers: " + m_timers);
+        debugPrintln("Futexes: " + m_futexes);
+        printGroupShares();
+        if ((m_cpuQuota > 0) || (m_ioQuota > 0))
+        {
+            debugPrintln("Quotas: " + m_cpuQuota + " ticks, " + m_ioQuota
+                         + " I/O words per " + QUOTA_WINDOW + " ticks, "
+                         + m_throttled + " times a process was held back for a window");
+        }
+        if (m_rtPeriods > 0)
+        {
+            debugPrintln("Real-time: " + m_rtPeriods + " periods, "
+                         + m_deadlineMisses + " deadlines missed");
+        }
+        if (m_sbrks > 0)
+        {
+            debugPrintln("Heap: " + m_sbrks + " resizes, " + m_relocations
+                         + " relocations (" + m_wordsMoved + " words moved)");
+        }
+        if (m_threadsCreated > 0)
+        {
+            debugPrintln("Threads: " + m_threadsCreated + " created, "
+                         + m_joinWaits + " joins waited");
+        }
+        if (m_ringSubmits > 0)
+        {
+            debugPrintln("Rings: " + m_ringSubmits + " submitted carrying "
+                         + m_ringEntries + " requests ("
+                         + (m_ringEntries - m_ringSubmits) + " traps saved)");
+        }
+        for(Pipe pipe : m_pipeTable.values())
+        {
+            debugPrintln("Pipe #" + (pipe.getId() - PIPE_BASE) + " " + pipe);
+        }
+        for(int i = 0; i < m_segments.size(); i++)
+        {
+            debugPrintln("Shared segment #" + i + " " + m_segments.get(i));
+        }
+        for(DeviceInfo di : m_devices)
+        {
+            if (di.scheduler.getCompleted() > 0)
+            {
+                debugPrintln("Device #" + di.getId() + " I/O " + di.scheduler);
+            }
+            if (di.cache != null)
+            {
+                debugPrintln("Device #" + di.getId() + " cache " + di.cache);
+            }
+            if (di.typeAhead != null)
+            {
+                debugPrintln("Device #" + di.getId() + " type-ahead " + di.typeAhead);
+            }
+            if (di.pollEnters > 0)
+            {
+                debugPrintln("Device #" + di.getId() + " polling: entered "
+                             + di.pollEnters + " times, left " + di.pollExits
+                             + " times, " + di.interruptsAvoided
+                             + " interrupts avoided");
+            }
+        }
+    }//printIOStats
+    
+    /*======================================================================
+     * Process Management Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * createIdleProcess
+     *
+     * creates a one instruction process that immediately exits.  This is used
+     * to buy time until device I/O completes and unblocks a legitimate
+     * process.
+     *
+     */
+    public void createIdleProcess()
+    {
+        int progArr[] = { 0, 0, 0, 0,   //SET r0=0
+                          0, 0, 0, 0,   //SET r0=0 (repeated instruction to account for vagaries in student implementation of the CPU class)
+                         10, 0, 0, 0,   //PUSH r0
+                         15, 0, 0, 0 }; //TRAP
+
+        //Initialize the starting position for this program
+        int baseAddr = m_nextLoadPos;
+
+        //Load the program into RAM
+        for(int i = 0; i < progArr.length; i++)
+        {
+            m_RAM.write(baseAddr + i, progArr[i]);
+        }
+
+        //Save the register info from the current process (if there is one)
+        if (m_currProcess != null)
+        {
+            m_currProcess.save(m_CPU);
+        }
+        
+        //Set the appropriate registers
+        m_CPU.setPC(baseAddr);
+        m_CPU.setSP(baseAddr + progArr.length + 10);
+        m_CPU.setBASE(baseAddr);
+        m_CPU.setLIM(baseAddr + progArr.length + 20);
+        m_CPU.setSBASE(0);
+        m_CPU.setSLIM(0);
+
+        //Save the relevant info as a new entry in m_processes
+        m_currProcess = new ProcessControlBlock(IDLE_PROC_ID);  
+        m_processes.add(m_currProcess);
+
+    }//createIdleProcess
+
+    /**
+     * printProcessTable      **DEBUGGING**
+     *
+     * prints all the processes in the process table
+     */
+    private void printProcessTable()
+    {
+        debugPrintln("");
+        debugPrintln("Process Table (" + m_processes.size() + " processes)");
+        debugPrintln("======================================================================");
+        for(ProcessControlBlock pi : m_processes)
+        {
+            debugPrintln("    " + pi);
+        }//for
+        debugPrintln("----------------------------------------------------------------------");
+
+    }//printProcessTable
+
+	/**
+	 * removeCurrentProcess
+	 * 
+	 * removes the current processes from m_processes
+	 * and calls scheduleNewProcess to pick a new one
+	 */
+    public void removeCurrentProcess()
+    {
+    	printProcessTable();
+    	if (m_currProcess.getProcessId() != IDLE_PROC_ID)
+    	{
+    		debugPrintln("Process " + m_currProcess.getProcessId() + " exited: "
+    		             + m_currProcess.accountingString());
+    	}
+    	m_processes.remove(m_currProcess);
+    	
+    	//Let go of any pipes the process still has open
+    	for(Pipe pipe : new Vector<Pipe>(m_pipeTable.values()))
+    	{
+    		if (pipe.getUsers().contains(m_currProcess))
+    		{
+    			closePipe(pipe, m_currProcess);
+    		}
+    	}
+    	for(SegmentInfo seg : m_segments)
+    	{
+    		seg.attached.remove(m_currProcess);
+    	}
+    	
+    	//A thread gives its stack back and releases the threads joining it
+    	ProcessControlBlock leader = m_currProcess.leader;
+    	if (leader != null)
+    	{
+    		leader.threads.remove(m_currProcess);
+    		int tid = m_currProcess.getProcessId();
+    		boolean joined = false;
+    		ProcessControlBlock joiner = selectBlockedProcess(m_exitWaits, SYSCALL_THREAD_JOIN, tid);
+    		while (joiner != null)
+    		{
+    			joiner.unblock();
+    			joined = true;
+    			joiner = selectBlockedProcess(m_exitWaits, SYSCALL_THREAD_JOIN, tid);
+    		}
+    		if (!joined)
+    		{
+    			leader.exitedThreads.add(tid);
+    		}
+    	}
+    	
+    	//Children of an exiting process have no one to report to
+    	for(ProcessControlBlock child : m_currProcess.children)
+    	{
+    		child.parent = null;
+    	}
+    	m_currProcess.children.clear();
+    	
+    	//Hand the exit code to a waiting parent.  Otherwise stay a zombie in
+    	//the parent's list of children until it waits.
+    	ProcessControlBlock parent = m_currProcess.parent;
+    	if (parent != null)
+    	{
+    		m_currProcess.exited = true;
+    		if (parent.isBlockedForDevice(m_exitWaits, SYSCALL_WAIT, -1))
+    		{
+    			reapChild(parent, m_currProcess);
+    			parent.unblock();
+    		}
+    	}
+    }//removeCurrentProcess
+    
+    /**
+     * reapChild
+     *
+     * removes an exited child from its parent and returns the child's id and
+     * exit code to the parent
+     *
+     * @param parent the process waiting for the child
+     * @param child  the child that exited
+     */
+    private void reapChild(ProcessControlBlock parent, ProcessControlBlock child)
+    {
+    	parent.children.remove(child);
+    	child.parent = null;
+    	pushToProcessStack(parent, child.getProcessId());
+    	pushToProcessStack(parent, child.exitCode);
+    	pushToProcessStack(parent, CODE_SUCCESS);
+    }//reapChild
+
+    /**
+     * getRandomProcess
+     *
+     * selects a non-Blocked process at random from the ProcessTable.
+     *
+     * @return a reference to the ProcessControlBlock struct of the selected process
+     * -OR- null if no non-blocked process exists
+     */
+    ProcessControlBlock getRandomProcess()
+    {
+        //Calculate a random offset into the m_processes list
+        int offset = ((int)(Math.random() * 2147483647)) % m_processes.size();
+            
+        //Iterate until a non-blocked process is found
+        ProcessControlBlock newProc = null;
+        for(int i = 0; i < m_processes.size(); i++)
+        {
+            newProc = m_processes.get((i + offset) % m_processes.size());
+            if ( ! newProc.isBlocked())
+            {
+                return newProc;
+            }
+        }//for
+
+        return null;        // no processes are Ready
+    }//getRandomProcess
+    
+    /**
+     * getFairProcess
+     *
+     * selects a non-Blocked process.  Real-time processes with budget left
+     * come first (see {@link #getRealtimeProcess}).  Otherwise the best
+     * effort process is selected in two steps.  First the process group
+     * that has had the least CPU time for its weight is chosen.  Then the
+     * process of that group with the smallest average starve time is
+     * selected.
+     *
+     * @return a reference to the ProcessControlBlock struct of the selected process
+     * -OR- null if no non-blocked process exists
+     */
+    ProcessControlBlock getFairProcess()
+    {
+    	ProcessControlBlock rt = getRealtimeProcess();
+    	if (rt != null)
+    	{
+    		return rt;
+    	}
+    	
+    	//Find the group that is furthest behind its share (counting the run
+    	//of the process on the CPU, which is charged when it is saved).  The
+    	//group on the CPU keeps it until it is GROUP_SLICE ahead so that the
+    	//groups don't trade the CPU at every clock tick.
+    	GroupInfo group = null;
+    	double groupPass = 0;
+    	for(ProcessControlBlock pi : m_processes)
+    	{
+    		if (pi.isBlocked() || (pi.rtPeriod > 0))
+    		{
+    			continue;
+    		}
+    		if (isOverQuota(pi))
+    		{
+    			if (!pi.throttled)
+    			{
+    				pi.throttled = true;
+    				m_throttled++;
+    			}
+    			continue;
+    		}
+    		GroupInfo g = getGroup(pi.group);
+    		double pass = g.pass;
+    		if (g.id == m_currProcess.group)
+    		{
+    			pass += (double)(m_CPU.getTicks() - m_currProcess.dispatchTime) / g.weight;
+    			pass -= GROUP_SLICE;
+    		}
+    		if ((group == null) || (pass < groupPass))
+    		{
+    			group = g;
+    			groupPass = pass;
+    		}
+    	}
+    	if (group == null)
+    	{
+    		return null;
+    	}
+    	
+    	int index = -1; 
+    	double avgStarve = Integer.MAX_VALUE;    	
+    	for(int i = 0; i < m_processes.size(); i++)
+    	{
+    		if(avgStarve > m_processes.get(i).avgStarve && !m_processes.get(i).isBlocked()
+    		   && (m_processes.get(i).group == group.id) && (m_processes.get(i).rtPeriod == 0)
+    		   && !isOverQuota(m_processes.get(i)))
+    		{
+    			avgStarve = m_processes.get(i).avgStarve;
+    			index = i;
+    		}
+    	}
+    	if (avgStarve == Integer.MAX_VALUE)
+    	{
+    		return null;
+    	}
+    	
+		return m_processes.get(index);
+    }
+    
+    /**
+     * getRealtimeProcess
+     *
+     * starts a new period for every real-time process whose deadline has
+     * passed (counting a miss if it had not finished the period's work)
+     * and then selects the ready real-time process with the earliest
+     * deadline that has budget left in its period.
+     *
+     * @return the process -OR- null if no real-time process can run
+     */
+    ProcessControlBlock getRealtimeProcess()
+    {
+    	ProcessControlBlock selected = null;
+    	for(ProcessControlBlock pi : m_processes)
+    	{
+    		if (pi.rtPeriod == 0)
+    		{
+    			continue;
+    		}
+    		while (m_CPU.getTicks() >= pi.rtDeadline)
+    		{
+    			pi.rtCharge();
+    			m_rtPeriods++;
+    			pi.rtPeriods++;
+    			if (!pi.rtDone)
+    			{
+    				m_deadlineMisses++;
+    				pi.rtMisses++;
+    			}
+    			pi.rtDone = false;
+    			pi.rtUsed = 0;
+    			pi.rtDeadline += pi.rtPeriod;
+    		}
+    		if (!pi.isBlocked() && (pi.getBudgetUsed() < pi.rtBudget)
+    		    && ((selected == null) || (pi.rtDeadline < selected.rtDeadline)))
+    		{
+    			selected = pi;
+    		}
+    	}
+    	return selected;
+    }//getRealtimeProcess
+    
+    /**
+     * getDeadlineMisses
+     *
+     * @return the number of periods that ended before their real-time
+     *         process finished its work
+     */
+    public long getDeadlineMisses()
+    {
+        return m_deadlineMisses;
+    }//getDeadlineMisses
+    
+    /**
+     * blockLabel
+     *
+     * names what a process is blocked on for the accounting report.  The
+     * kernel's own wait objects are not in the device table and have no
+     * id of their own so each gets a fixed name.
+     *
+     * @param dev the device the process is blocked on
+     * @param op  the operation it is blocked for
+     * @return "timer", "futex", "join", "wait", "pipe<id>" or "dev<id>"
+     */
+    private String blockLabel(Device dev, int op)
+    {
+        if (dev == m_timer)
+        {
+            return "timer";
+        }
+        if (dev == m_futexes)
+        {
+            return "futex";
+        }
+        if (dev == m_exitWaits)
+        {
+            return (op == SYSCALL_THREAD_JOIN) ? "join" : "wait";
+        }
+        if (dev instanceof Pipe)
+        {
+            return "pipe" + (dev.getId() - PIPE_BASE);
+        }
+        return "dev" + dev.getId();
+    }//blockLabel
+    
+	/**
+	 * scheduleNewProcess
+	 * 
+	 * Selects a new process to run and runs it
+	 */
+    public void scheduleNewProcess()
+    {
+    	if (m_processes.isEmpty())
+    	{
+
+    		//debugPrintln("No more processes to run. Stopping.");
+    		flushConsoles();
+    		printIOStats();
+    		System.exit(CODE_SUCCESS);
+    	}
+    	startQuotaWindow();
+    	int i = 1;
+    	ProcessControlBlock temp;
+    	switch (i)
+    	{
+    	case 0: 
+    		temp = getRandomProcess();
+    		break;
+    	case 1: 
+    		temp = getFairProcess();
+    		break;
+		default:
+	    	temp = getRandomProcess();
+	    	break;
+    	}
+    	if((temp == null) && idleUntilTimer())
+    	{
+    		temp = getFairProcess();
+    	}
+    	if((temp == null) && idleUntilQuotaWindow())
+    	{
+    		temp = getFairProcess();
+    	}
+    	if(temp == null)
+    	{
+    		createIdleProcess();
+    		return;
+    	}	
+    	if(!temp.equals(m_currProcess))
+    	{
+	    	m_currProcess.save(m_CPU);
+	    	m_currProcess = temp;
+	    	m_currProcess.restore(m_CPU);
+    	}
+    }//scheduleNewProcess
+
+    /**
+     * addProgram
+     *
+     * registers a new program with the simulated OS that can be used when the
+     * current process makes an Exec system call.  (Normally the program is
+     * specified by the process via a filename but this is a simulation so
+     * programs are specified by the id returned here.)
+     *
+     * @param prog  the program to add
+     * @return the program id (its index in m_programs)
+     *
+     */
+    public int addProgram(Program prog)
+    {
+        m_programs.add(prog);
+        return m_programs.size() - 1;
+    }//addProgram  
+    
+    /*======================================================================
+     * Program Management Methods
+     *----------------------------------------------------------------------
+     */
+
+    /**
+     * createProcess()
+     * 
+     * @param prog 
+     * @param size total allocated ram for the program
+     * 
+     * Helper method to initialize system registers with appropriate values
+     */
+    public void createProcess(Program prog, int allocSize)
+    {       
         //compile the prog into an array of int
-        int[] programArray = prog.export(); 
+        int[] programArray = prog.getImage();
         
         //set the location for the allocation to be at the next location
         int location = m_nextLoadPos;
         
-        //set the next location for next time
-        m_nextLoadPos += allocSize;
+        //set the next location for next time.  One word is left free
+        //because the first push onto the stack lands just above LIM and
+        //would otherwise overwrite the next program loaded.
+        m_nextLoadPos += allocSize + 1;
         
         
         if (m_nextLoadPos > m_RAM.getSize())
@@ -383,15 +1726,14 @@ public class SOS implements CPU.TrapHandler
         	System.exit(-1);
         }
         
-        for(int i = 0; i < programArray.length; i++){ //move the program into ram
-            m_RAM.write(location + i, programArray[i]);
-        }
+        m_RAM.writeBlock(location, programArray, 0, programArray.length); //move the program into ram
         if (m_currProcess != null)
         {
         	m_currProcess.save(m_CPU);
         }
         
         m_currProcess = new ProcessControlBlock(m_nextProcessID);
+        m_currProcess.imageSize = programArray.length;
         m_processes.add(m_currProcess);
         m_nextProcessID++;
         
@@ -412,8 +1754,53 @@ public class SOS implements CPU.TrapHandler
         m_CPU.setSP(0);
         m_CPU.setBASE(loc);
         m_CPU.setLIM(loc + size);
+        m_CPU.setSBASE(0);
+        m_CPU.setSLIM(0);
     }//initialize registers
     
+    /**
+     * topOfProcessStack
+     *
+     * reads the value on top of a process' stack without removing it
+     *
+     * @param pcb the process
+     * @return the value (0 if the stack is empty)
+     */
+    private int topOfProcessStack(ProcessControlBlock pcb)
+    {
+        boolean running = (pcb == m_currProcess);
+        int sp = running ? m_CPU.getSP() : pcb.getRegisterValue(CPU.SP);
+        int lim = running ? m_CPU.getLIM() : pcb.getRegisterValue(CPU.LIM);
+        if (sp <= 0)
+        {
+            return 0;
+        }
+        return m_RAM.read(lim - sp + 1);
+    }//topOfProcessStack
+    
+    /**
+     * pushToProcessStack
+     *
+     * pushes a value onto the stack of a process that is not necessarily the
+     * one running on the CPU (e.g., to return the result of a system call to
+     * a process that was blocked waiting for it)
+     *
+     * @param pcb   the process
+     * @param value the value to push
+     */
+    private void pushToProcessStack(ProcessControlBlock pcb, int value)
+    {
+        if (pcb == m_currProcess)
+        {
+            m_CPU.pushToStack(value);
+            return;
+        }
+        
+        int sp = pcb.getRegisterValue(CPU.SP);
+        m_RAM.write(pcb.getRegisterValue(CPU.LIM) - sp, value);
+        pcb.setRegisterValue(CPU.SP, sp + 1);
+    }//pushToProcessStack
+    
 
     
 
@@ -471,8 +1858,8 @@ public class SOS implements CPU.TrapHandler
     /**
      * interruptIOReadComplete
      * 
-     * adds ability to wake up threads that were waiting for a read 
-     * operation complete.
+     * wakes up the process that was waiting for the read operation that just
+     * completed, hands it the data and issues the device's next request.
      * 
      * @param devID the ID of the device that completed its operation
      * @param addr of blocked process
@@ -482,36 +1869,14 @@ public class SOS implements CPU.TrapHandler
      */
 	@Override
 	public void interruptIOReadComplete(int devID, int addr, int data) {
-		
-		DeviceInfo temp = null;
-		for (DeviceInfo i : m_devices)
-		{
-			if (i.getId() == devID)
-			{
-				temp = i;
-				break;
-			}
-		}
-		if (temp == null)
-		{
-			m_CPU.pushToStack(CODE_NO_DEVICE);
-		}
-		else
-		{
-			ProcessControlBlock block = selectBlockedProcess(temp.device, SYSCALL_READ, addr);
-			block.unblock();
-			int location = block.getRegisterValue(CPU.LIM) - block.getRegisterValue(CPU.SP);
-			m_RAM.write(location, data);
-			m_RAM.write(location-1, CODE_SUCCESS);
-	        block.setRegisterValue(CPU.SP, CPU.SP+2);
-		}
+		handleIOCompletion(devID, data);
 	}//interruptIOReadComplete
 
     /**
-     * interruptIOReadComplete
+     * interruptIOWriteComplete
      * 
-     * adds ability to wake up threads that were waiting for a read 
-     * operation complete.
+     * wakes up the process that was waiting for the write operation that just
+     * completed and issues the device's next request.
      * 
      * @param devID the ID of the device that completed its operation
      * @param addr of the blocked process
@@ -520,37 +1885,24 @@ public class SOS implements CPU.TrapHandler
      */
 	@Override
 	public void interruptIOWriteComplete(int devID, int addr) {
-		DeviceInfo temp = null;
-		for (DeviceInfo i : m_devices)
-		{
-			if (i.getId() == devID)
-			{
-				temp = i;
-				break;
-			}
-		}
-		if (temp == null)
-		{
-			m_CPU.pushToStack(CODE_NO_DEVICE);
-		}
-		else
-		{
-			ProcessControlBlock block = selectBlockedProcess(temp.device, SYSCALL_READ, addr);
-			block.unblock();
-			int location = block.getRegisterValue(CPU.LIM) - block.getRegisterValue(CPU.SP);
-			m_RAM.write(location, CODE_SUCCESS);
-	        block.setRegisterValue(CPU.SP, CPU.SP+1);
-		}		
+		handleIOCompletion(devID, -999);
 	}//interruptIOWriteComplete
     
 	/**
 	 * interruptClock
 	 * 
-	 * Schedules a new process on a clock interrupt
+	 * Wakes up sleeping processes whose time is up, polls the devices in
+	 * polling mode, runs the buffer cache flusher and schedules a new process
+	 * on a clock interrupt
 	 */
 	@Override
 	public void interruptClock() {
+		expireTimers();
+		pollDevices();
+		flushBufferCaches();
+		m_preempting = true;
 		scheduleNewProcess();
+		m_preempting = false;
 	}//interruptClock()
 
 	
@@ -581,46 +1933,105 @@ public class SOS implements CPU.TrapHandler
             System.exit(0);
         }
         opCode = m_CPU.popFromStack();
-        switch (opCode)
+        SyscallTable.Entry call = m_syscalls.lookup(opCode);
+        if (call == null)
         {
-            case SYSCALL_EXIT:
-                syscallExit();
-                break;
-            case SYSCALL_OUTPUT:
-                syscallOutput();
-                break;
-            case SYSCALL_GETPID:
-                syscallPid();
-                break;
-            case SYSCALL_COREDUMP:
-                syscallCoreDump();
-                break;
-            case SYSCALL_OPEN:
-            	syscallOpen();
-            	break;
-            case SYSCALL_CLOSE:
-            	syscallClose();
-            	break;
-            case SYSCALL_READ:
-            	syscallRead();
-            	break;
-            case SYSCALL_WRITE:
-            	syscallWrite();
-            	break;
-            case SYSCALL_EXEC:
-            	syscallExec();
-            	break;
-            case SYSCALL_YIELD:
-            	syscallYield();   
-            	break;
-            default:
-                break;
+            //Tell the process instead of ignoring the trap
+            debugPrintln("Unknown system call " + opCode + " from process "
+                         + m_currProcess.getProcessId());
+            m_syscalls.recordUnknown();
+            m_CPU.pushToStack(CODE_NOT_SUPPORTED);
+            return;
         }
+        
+        ProcessControlBlock caller = m_currProcess;
+        int startTicks = m_CPU.getTicks();
+        long startCpu = caller.getCpuTicks();
+        long start = System.nanoTime();
+        call.getHandler().call();
+        long nanos = System.nanoTime() - start;
+        
+        //A call that blocked pushes its status when it completes
+        boolean blocked = caller.isBlocked();
+        boolean error = call.returnsStatus() && !blocked
+            && (topOfProcessStack(caller) < CODE_SUCCESS);
+        call.record(m_CPU.getTicks() - startTicks, nanos, error, blocked);
+        
+        //Charge the caller for the time it was on the CPU during the call
+        caller.kernelTicks += caller.getCpuTicks() - startCpu;
     } //syscall
     
+    /**
+     * registerSyscalls
+     *
+     * fills the system call table with the calls this OS handles
+     */
+    private void registerSyscalls()
+    {
+        m_syscalls.register(SYSCALL_EXIT, "EXIT", false, new SyscallTable.Handler() {
+                public void call() { syscallExit(); } });
+        m_syscalls.register(SYSCALL_OUTPUT, "OUTPUT", false, new SyscallTable.Handler() {
+                public void call() { syscallOutput(); } });
+        m_syscalls.register(SYSCALL_GETPID, "GETPID", false, new SyscallTable.Handler() {
+                public void call() { syscallPid(); } });
+        m_syscalls.register(SYSCALL_OPEN, "OPEN", true, new SyscallTable.Handler() {
+                public void call() { syscallOpen(); } });
+        m_syscalls.register(SYSCALL_CLOSE, "CLOSE", true, new SyscallTable.Handler() {
+                public void call() { syscallClose(); } });
+        m_syscalls.register(SYSCALL_READ, "READ", true, new SyscallTable.Handler() {
+                public void call() { syscallRead(); } });
+        m_syscalls.register(SYSCALL_WRITE, "WRITE", true, new SyscallTable.Handler() {
+                public void call() { syscallWrite(); } });
+        m_syscalls.register(SYSCALL_EXEC, "EXEC", false, new SyscallTable.Handler() {
+                public void call() { syscallExec(); } });
+        m_syscalls.register(SYSCALL_YIELD, "YIELD", false, new SyscallTable.Handler() {
+                public void call() { syscallYield(); } });
+        m_syscalls.register(SYSCALL_COREDUMP, "COREDUMP", false, new SyscallTable.Handler() {
+                public void call() { syscallCoreDump(); } });
+        m_syscalls.register(SYSCALL_READ_BLOCK, "READ_BLOCK", true, new SyscallTable.Handler() {
+                public void call() { syscallBlockIO(SYSCALL_READ); } });
+        m_syscalls.register(SYSCALL_WRITE_BLOCK, "WRITE_BLOCK", true, new SyscallTable.Handler() {
+                public void call() { syscallBlockIO(SYSCALL_WRITE); } });
+        m_syscalls.register(SYSCALL_SLEEP, "SLEEP", true, new SyscallTable.Handler() {
+                public void call() { syscallSleep(); } });
+        m_syscalls.register(SYSCALL_RING_SUBMIT, "RING_SUBMIT", true, new SyscallTable.Handler() {
+                public void call() { syscallRingSubmit(); } });
+        m_syscalls.register(SYSCALL_PIPE, "PIPE", true, new SyscallTable.Handler() {
+                public void call() { syscallPipe(); } });
+        m_syscalls.register(SYSCALL_SHMGET, "SHMGET", true, new SyscallTable.Handler() {
+                public void call() { syscallShmGet(); } });
+        m_syscalls.register(SYSCALL_SHMAT, "SHMAT", true, new SyscallTable.Handler() {
+                public void call() { syscallShmAt(); } });
+        m_syscalls.register(SYSCALL_SHMDT, "SHMDT", true, new SyscallTable.Handler() {
+                public void call() { syscallShmDt(); } });
+        m_syscalls.register(SYSCALL_SBRK, "SBRK", true, new SyscallTable.Handler() {
+                public void call() { syscallSbrk(); } });
+        m_syscalls.register(SYSCALL_SET_REALTIME, "SET_REALTIME", true, new SyscallTable.Handler() {
+                public void call() { syscallSetRealtime(); } });
+        m_syscalls.register(SYSCALL_NEXT_PERIOD, "NEXT_PERIOD", true, new SyscallTable.Handler() {
+                public void call() { syscallNextPeriod(); } });
+        m_syscalls.register(SYSCALL_FUTEX_WAIT, "FUTEX_WAIT", true, new SyscallTable.Handler() {
+                public void call() { syscallFutexWait(); } });
+        m_syscalls.register(SYSCALL_FUTEX_WAKE, "FUTEX_WAKE", true, new SyscallTable.Handler() {
+                public void call() { syscallFutexWake(); } });
+        m_syscalls.register(SYSCALL_THREAD_CREATE, "THREAD_CREATE", true, new SyscallTable.Handler() {
+                public void call() { syscallThreadCreate(); } });
+        m_syscalls.register(SYSCALL_THREAD_JOIN, "THREAD_JOIN", true, new SyscallTable.Handler() {
+                public void call() { syscallThreadJoin(); } });
+        m_syscalls.register(SYSCALL_WAIT, "WAIT", true, new SyscallTable.Handler() {
+                public void call() { syscallWait(); } });
+        m_syscalls.register(SYSCALL_SPAWN_N, "SPAWN_N", true, new SyscallTable.Handler() {
+                public void call() { syscallSpawnN(); } });
+        m_syscalls.register(SYSCALL_EXEC_ID, "EXEC_ID", true, new SyscallTable.Handler() {
+                public void call() { syscallExecId(); } });
+        m_syscalls.register(SYSCALL_EXIT_CODE, "EXIT_CODE", false, new SyscallTable.Handler() {
+                public void call() { syscallExitCode(); } });
+    }//registerSyscalls
+    
     /**
      * syscallExit
-     * Current exits the simulation
+     * Current exits the simulation.  The exit code handed to the parent is
+     * 0 (see {@link #syscallExitCode}).
      *
      * @param void
      * 
@@ -633,6 +2044,21 @@ public class SOS implements CPU.TrapHandler
         
     }//syscallExit
     
+    /**
+     * syscallExitCode
+     * exits like {@link #syscallExit} but first pops the exit code that a
+     * parent waiting with SYSCALL_WAIT receives.
+     *
+     * @param void
+     * 
+     * @return void
+     */
+    private void syscallExitCode()
+    {
+    	m_currProcess.exitCode = m_CPU.popFromStack();
+    	syscallExit();
+    }//syscallExitCode
+    
     /**
      * syscallOutput
      * prints pops parameter from stack and prints to terminal
@@ -696,16 +2122,7 @@ public class SOS implements CPU.TrapHandler
     private DeviceInfo syscallHelper()
     {
 	      int dNUM =  m_CPU.popFromStack();
-	   	  DeviceInfo temp = null;
-	   	  for (DeviceInfo d : m_devices)
-	   	  {
-	   		  if (d.getId() == dNUM )
-	   		  {
-	   			  temp = d;
-	   			  break;
-	   		  }
-	   	  }
-	   	  return temp;
+	   	  return findDevice(dNUM);
    	  
     }//syscallhelper
     
@@ -721,172 +2138,1112 @@ public class SOS implements CPU.TrapHandler
      */   
    private void syscallOpen()
    {
-	  DeviceInfo d = syscallHelper();
-	  if (d == null)
-	  {
-		  m_CPU.pushToStack(CODE_NO_DEVICE);
-		  return;
-	  }
-	  boolean share = d.getDevice().isSharable();
-	  boolean unused = d.unused();
-	  if (!share && !unused)
-	  {
-		  if(d.containsProcess(m_currProcess))
-		  {
-			  m_CPU.pushToStack(CODE_ALREADY_OPEN);
-			  return;
-		  }
-		  else
-		  {
-			  d.addProcess(this.m_currProcess);
-			  m_currProcess.block(m_CPU, d.getDevice(), SYSCALL_OPEN,-1);
-			  m_CPU.pushToStack(CODE_SUCCESS);
-			  scheduleNewProcess();
-			  return;
-		  }
-	  }
-	  d.addProcess(this.m_currProcess);
-	  m_CPU.pushToStack(CODE_SUCCESS);
-   }//syscallOpen
+	  DeviceInfo d = syscallHelper();
+	  int status = openDevice(d);
+	  if (status == CODE_NOT_SHARABLE)
+	  {
+		  //Wait for the process that holds the device to close it
+		  d.addProcess(this.m_currProcess);
+		  m_currProcess.block(m_CPU, d.getDevice(), SYSCALL_OPEN,-1);
+		  m_CPU.pushToStack(CODE_SUCCESS);
+		  scheduleNewProcess();
+		  return;
+	  }
+	  m_CPU.pushToStack(status);
+   }//syscallOpen
+   
+   /**
+    * syscallClose
+    * closes a device specified by the stack and handles 
+    * some mistakes by pushing error codes
+    * if it succeeds it pushes success to the stack
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallClose()
+   {
+	   int devNum = m_CPU.popFromStack();
+	   DeviceInfo d = findDevice(devNum);
+	   Pipe pipe = (d == null) ? findPipe(devNum) : null;
+	   if (pipe != null)
+	   {
+		   m_CPU.pushToStack(closePipe(pipe, m_currProcess));
+		   return;
+	   }
+	   m_CPU.pushToStack(closeDevice(d));
+   }//close
+   
+   /**
+    * syscallWrite
+    * writes to a device specified by the stack at the location and 
+    * with the value specified by the stack and handles 
+    * some mistakes by pushing error codes
+    * it then queues the request on the device and blocks the process
+    * to wait for a result
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallWrite()
+   {
+	   int value = m_CPU.popFromStack();
+	   int address = m_CPU.popFromStack();
+	   int devNum = m_CPU.popFromStack();
+	   DeviceInfo d = findDevice(devNum);
+	   Pipe pipe = (d == null) ? findPipe(devNum) : null;
+	   if (pipe != null)
+	   {
+		   syscallPipeIO(pipe, SYSCALL_WRITE, value);
+		   return;
+	   }
+	   int status = checkWordIO(d, SYSCALL_WRITE, address);
+	   if (status != CODE_SUCCESS)
+	   {
+		   m_CPU.pushToStack(status);
+		   return;
+	   }
+	   IOScheduler.Request w = new IOScheduler.Request(SYSCALL_WRITE, address, value, m_currProcess);
+	   if(startWordIO(d, w))
+	   {
+		   m_CPU.pushToStack(CODE_SUCCESS);
+		   return;
+	   }
+	   m_currProcess.block(m_CPU, d.getDevice(), SYSCALL_WRITE, address);
+	   scheduleNewProcess();
+
+
+   }
+   
+   /**
+    * syscallRead
+    * reads from a device at a location
+    * specified by the stack and handles 
+    * some mistakes by pushing error codes
+    * it then queues the request on the device and blocks the process
+    * to wait for IO
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallRead()
+   {
+	   int address = m_CPU.popFromStack();
+	   int devNum = m_CPU.popFromStack();
+	   DeviceInfo d = findDevice(devNum);
+	   Pipe pipe = (d == null) ? findPipe(devNum) : null;
+	   if (pipe != null)
+	   {
+		   syscallPipeIO(pipe, SYSCALL_READ, 0);
+		   return;
+	   }
+	   int status = checkWordIO(d, SYSCALL_READ, address);
+	   if (status != CODE_SUCCESS)
+	   {
+		   m_CPU.pushToStack(status);
+		   return;
+	   }
+	   IOScheduler.Request w = new IOScheduler.Request(SYSCALL_READ, address, 0, m_currProcess);
+	   if(startWordIO(d, w))
+	   {
+		   m_CPU.pushToStack(w.data);
+		   m_CPU.pushToStack(CODE_SUCCESS);
+		   return;
+	   }
+	   m_currProcess.block(m_CPU, d.getDevice(), SYSCALL_READ, address);
+	   scheduleNewProcess();
+
+   }
+   
+   /**
+    * openDevice
+    * adds the current process to the processes that have a device open.
+    * A device that cannot be shared is only opened if no other process
+    * has it open.
+    * 
+    * @param d the device (may be null)
+    * 
+    * @return CODE_SUCCESS or an error code.  CODE_NOT_SHARABLE means the
+    *         device is held by another process and was not opened.
+    */ 
+   private int openDevice(DeviceInfo d)
+   {
+	   if (d == null)
+	   {
+		   return CODE_NO_DEVICE;
+	   }
+	   if (!d.getDevice().isSharable() && !d.unused())
+	   {
+		   if(d.containsProcess(m_currProcess))
+		   {
+			   return CODE_ALREADY_OPEN;
+		   }
+		   return CODE_NOT_SHARABLE;
+	   }
+	   d.addProcess(this.m_currProcess);
+	   
+	   //Start producing input before the process asks for it
+	   if (d.typeAhead != null)
+	   {
+		   fillTypeAhead(d);
+	   }
+	   return CODE_SUCCESS;
+   }//openDevice
+   
+   /**
+    * closeDevice
+    * removes the current process from the processes that have a device
+    * open and lets a process that is waiting to open it continue
+    * 
+    * @param d the device (may be null)
+    * 
+    * @return CODE_SUCCESS or an error code
+    */ 
+   private int closeDevice(DeviceInfo d)
+   {
+	   if (d == null)
+	   {
+		   return CODE_NO_DEVICE;
+	   }
+	   if(!d.containsProcess(m_currProcess))
+	   {
+		   return CODE_NOT_OPENED;
+	   }
+	   d.removeProcess(this.m_currProcess);
+	   ProcessControlBlock temp = selectBlockedProcess(d.getDevice(), SYSCALL_OPEN, -1);
+	   if (temp != null)
+	   {
+		   temp.unblock();
+	   }
+	   return CODE_SUCCESS;
+   }//closeDevice
+   
+   /**
+    * checkWordIO
+    * checks that the current process may read or write a word on a device
+    * 
+    * @param d    the device (may be null)
+    * @param op   SYSCALL_READ or SYSCALL_WRITE
+    * @param addr the device address
+    * 
+    * @return CODE_SUCCESS or the error code to return to the process
+    */ 
+   private int checkWordIO(DeviceInfo d, int op, int addr)
+   {
+	   if (d == null)
+	   {
+		   return CODE_NO_DEVICE;
+	   }
+	   if(!d.containsProcess(m_currProcess))
+	   {
+		   return CODE_NOT_OPENED;
+	   }
+	   if((op == SYSCALL_READ) && !d.getDevice().isReadable())
+	   {
+		   return CODE_NOT_READABLE;
+	   }
+	   if((op == SYSCALL_WRITE) && !d.getDevice().isWriteable())
+	   {
+		   return CODE_NOT_WRITEABLE;
+	   }
+	   if(!checkDeviceAddress(d, addr))
+	   {
+		   return CODE_BAD_ADDRESS;
+	   }
+	   return CODE_SUCCESS;
+   }//checkWordIO
+   
+   /**
+    * syscallBlockIO
+    * transfers a range of words between a device and a buffer in the
+    * current process' memory.  The arguments on the stack are the device,
+    * the device address, the address of the buffer and the number of words.
+    * The transfer is queued on the device as a single request, the process
+    * is blocked and the data are copied into (or were copied out of) its
+    * memory in one piece.  Error codes are pushed as for read and write.
+    * 
+    * @param op SYSCALL_READ or SYSCALL_WRITE
+    * 
+    * @return void
+    */ 
+   private void syscallBlockIO(int op)
+   {
+	   int length = m_CPU.popFromStack();
+	   int buffer = m_CPU.popFromStack();
+	   int address = m_CPU.popFromStack();
+	   DeviceInfo d = syscallHelper();
+	   if (d == null)
+	   {
+		   m_CPU.pushToStack(CODE_NO_DEVICE);
+		   return;
+	   }
+	   if(!d.containsProcess(m_currProcess))
+	   {
+		   m_CPU.pushToStack(CODE_NOT_OPENED);
+		   return;
+	   }
+	   if((op == SYSCALL_READ) && !d.getDevice().isReadable())
+	   {
+		   m_CPU.pushToStack(CODE_NOT_READABLE);
+		   return;
+	   }
+	   if((op == SYSCALL_WRITE) && !d.getDevice().isWriteable())
+	   {
+		   m_CPU.pushToStack(CODE_NOT_WRITEABLE);
+		   return;
+	   }
+	   
+	   //The buffer must lie inside the process and the range on the device
+	   int memAddr = m_CPU.getBASE() + buffer;
+	   if(!(d.getDevice() instanceof DMADevice) || (length <= 0) || (buffer < 0)
+	      || (memAddr + length > m_CPU.getLIM())
+	      || !checkDeviceAddress(d, address)
+	      || !checkDeviceAddress(d, address + length - 1))
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+		   return;
+	   }
+	   
+	   IOScheduler.Request req = new IOScheduler.Request(op, address, 0, m_currProcess);
+	   chargeIO(m_currProcess, length);
+	   req.kind = IOScheduler.KIND_DMA;
+	   req.buffer = new int[length];
+	   req.length = length;
+	   req.memAddr = memAddr;
+	   if (op == SYSCALL_WRITE)
+	   {
+		   m_RAM.readBlock(memAddr, req.buffer, 0, length);
+		   if (d.cache != null)
+		   {
+			   req.context = d.cache.startDirectWrite(address, req.buffer, 0, length);
+		   }
+	   }
+	   
+	   m_currProcess.block(m_CPU, d.getDevice(), op, address);
+	   d.scheduler.add(req, m_CPU.getTicks());
+	   dispatchIO(d);
+	   scheduleNewProcess();
+   }//syscallBlockIO
+   
+   /**
+    * syscallSleep
+    * blocks the current process for the number of ticks specified by the
+    * stack.  Success is pushed right away and the process becomes ready
+    * again once the timer expires.  A sleep of zero ticks or less returns
+    * immediately.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallSleep()
+   {
+	   int ticks = m_CPU.popFromStack();
+	   m_CPU.pushToStack(CODE_SUCCESS);
+	   if(ticks <= 0)
+	   {
+		   return;
+	   }
+	   
+	   m_timers.add((long)m_CPU.getTicks() + ticks, m_currProcess);
+	   m_currProcess.block(m_CPU, m_timer, SYSCALL_SLEEP, -1);
+	   scheduleNewProcess();
+   }//syscallSleep
    
    /**
-    * syscallClose
-    * closes a device specified by the stack and handles 
-    * some mistakes by pushing error codes
-    * if it succeeds it pushes success to the stack
+    * syscallSetRealtime
+    * puts the current process in the real-time class.  The arguments on
+    * the stack are the period and the budget (the CPU ticks the process
+    * needs in each period).  The first period starts now.  Real-time
+    * processes run ahead of all others, earliest deadline first, until
+    * their budget for the period is used up.  The process is only admitted
+    * if the budgets of all real-time processes add up to no more than
+    * RT_UTILIZATION percent of the CPU; otherwise CODE_NOT_ADMITTED is
+    * pushed.  CODE_BAD_ARGUMENT is pushed if the budget is not between 1
+    * and the period.  A period of zero or less returns the process to the
+    * best effort class.  Success is pushed if the process was admitted (or
+    * left).
     * 
     * @param void
     * 
     * @return void
     */ 
-   private void syscallClose()
+   private void syscallSetRealtime()
    {
-	   DeviceInfo d = syscallHelper();
-	   if (d == null)
+	   int budget = m_CPU.popFromStack();
+	   int period = m_CPU.popFromStack();
+	   m_currProcess.rtCharge();
+	   if (period <= 0)
 	   {
-		   m_CPU.pushToStack(CODE_NO_DEVICE);
-		  return;
+		   m_currProcess.rtPeriod = 0;
+		   m_CPU.pushToStack(CODE_SUCCESS);
+		   return;
 	   }
-	   if(!d.containsProcess(m_currProcess))
+	   if ((budget <= 0) || (budget > period))
 	   {
-		   m_CPU.pushToStack(CODE_NOT_OPENED);
+		   m_CPU.pushToStack(CODE_BAD_ARGUMENT);
 		   return;
 	   }
-	d.removeProcess(this.m_currProcess);
-	ProcessControlBlock temp = selectBlockedProcess(d.getDevice(), SYSCALL_OPEN, -1);
-	if (temp != null)
-	{
-		temp.unblock();
-	}
-	m_CPU.pushToStack(CODE_SUCCESS);
-
-   }//close
+	   
+	   double utilization = (double)budget / period;
+	   for(ProcessControlBlock pi : m_processes)
+	   {
+		   if ((pi != m_currProcess) && (pi.rtPeriod > 0))
+		   {
+			   utilization += (double)pi.rtBudget / pi.rtPeriod;
+		   }
+	   }
+	   if (utilization * 100 > RT_UTILIZATION)
+	   {
+		   m_CPU.pushToStack(CODE_NOT_ADMITTED);
+		   return;
+	   }
+	   
+	   m_currProcess.rtPeriod = period;
+	   m_currProcess.rtBudget = budget;
+	   m_currProcess.rtDeadline = m_CPU.getTicks() + period;
+	   m_currProcess.rtUsed = 0;
+	   m_currProcess.rtDone = false;
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallSetRealtime
    
    /**
-    * syscallWrite
-    * writes to a device specified by the stack at the location and 
-    * with the value specified by the stack and handles 
-    * some mistakes by pushing error codes
-    * it then blocks the process to wait for a result
+    * syscallNextPeriod
+    * tells the OS that a real-time process has finished the work of its
+    * current period.  Success is pushed and the process sleeps until the
+    * next period starts.  CODE_NOT_SUPPORTED is pushed if the process is not
+    * in the real-time class.
     * 
     * @param void
     * 
     * @return void
     */ 
-   private void syscallWrite()
+   private void syscallNextPeriod()
    {
-	   int value = m_CPU.popFromStack();
-	   int address = m_CPU.popFromStack();
-	   DeviceInfo d = syscallHelper();
-	   if (d == null)
+	   if (m_currProcess.rtPeriod == 0)
 	   {
-		   m_CPU.pushToStack(CODE_NO_DEVICE);
-		  return;
+		   m_CPU.pushToStack(CODE_NOT_SUPPORTED);
+		   return;
 	   }
-	   if(!d.containsProcess(m_currProcess))
+	   m_currProcess.rtDone = true;
+	   m_CPU.pushToStack(CODE_SUCCESS);
+	   m_timers.add((long)m_currProcess.rtDeadline, m_currProcess);
+	   m_currProcess.block(m_CPU, m_timer, SYSCALL_SLEEP, -1);
+	   scheduleNewProcess();
+   }//syscallNextPeriod
+   
+   /**
+    * syscallRingSubmit
+    * submits a batch of device requests with a single trap.  The arguments
+    * on the stack are the address of a ring in the current process' memory
+    * and the number of entries in it.  Each submission entry is
+    * RING_ENTRY_SIZE words (operation, device, address, data) and the
+    * completion entries (status, value) follow the last submission entry.
+    * Opens, closes, reads and writes (of devices or pipes) are supported.
+    * Every entry is started
+    * before any of them is waited for so requests to different devices
+    * overlap.  Success is pushed once the ring has been accepted and the
+    * process is blocked until every entry has posted its completion.  An
+    * open of a device that another process holds fails with
+    * CODE_NOT_SHARABLE instead of waiting.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallRingSubmit()
+   {
+	   int count = m_CPU.popFromStack();
+	   int ring = m_CPU.popFromStack();
+	   int memAddr = m_CPU.getBASE() + ring;
+	   if((count <= 0) || (ring < 0)
+	      || (memAddr + count * (RING_ENTRY_SIZE + RING_RESULT_SIZE) > m_CPU.getLIM()))
 	   {
-		   m_CPU.pushToStack(CODE_NOT_OPENED);
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
 		   return;
 	   }
-	   if(!d.getDevice().isWriteable())
+	   
+	   int[] entries = new int[count * RING_ENTRY_SIZE];
+	   m_RAM.readBlock(memAddr, entries, 0, entries.length);
+	   RingBatch batch = new RingBatch(m_currProcess, memAddr + entries.length);
+	   Device waitFor = null;
+	   m_ringSubmits++;
+	   m_ringEntries += count;
+	   
+	   for(int i = 0; i < count; i++)
 	   {
-		   m_CPU.pushToStack(CODE_NOT_WRITEABLE);
+		   int op = entries[i * RING_ENTRY_SIZE];
+		   DeviceInfo d = findDevice(entries[i * RING_ENTRY_SIZE + 1]);
+		   Pipe pipe = (d == null) ? findPipe(entries[i * RING_ENTRY_SIZE + 1]) : null;
+		   int address = entries[i * RING_ENTRY_SIZE + 2];
+		   int value = entries[i * RING_ENTRY_SIZE + 3];
+		   switch(op)
+		   {
+			   case SYSCALL_OPEN:
+				   batch.post(i, openDevice(d), 0);
+				   break;
+			   case SYSCALL_CLOSE:
+				   batch.post(i, (pipe != null) ? closePipe(pipe, m_currProcess) : closeDevice(d), 0);
+				   break;
+			   case SYSCALL_READ:
+			   case SYSCALL_WRITE:
+				   int status = (pipe != null) ? checkPipeIO(pipe) : checkWordIO(d, op, address);
+				   if (status != CODE_SUCCESS)
+				   {
+					   batch.post(i, status, 0);
+					   break;
+				   }
+				   IOScheduler.Request w = new IOScheduler.Request(op, address, value, m_currProcess);
+				   w.context = batch;
+				   w.slot = i;
+				   if ((pipe != null) ? startPipeIO(pipe, w) : startWordIO(d, w))
+				   {
+					   batch.post(i, CODE_SUCCESS, (op == SYSCALL_READ) ? w.data : 0);
+				   }
+				   else
+				   {
+					   batch.pending++;
+					   if (waitFor == null)
+					   {
+						   waitFor = (pipe != null) ? pipe : d.getDevice();
+					   }
+				   }
+				   break;
+			   default:
+				   batch.post(i, CODE_NOT_SUPPORTED, 0);
+				   break;
+		   }//switch
+	   }//for
+	   
+	   m_CPU.pushToStack(CODE_SUCCESS);
+	   if (batch.pending > 0)
+	   {
+		   m_currProcess.block(m_CPU, waitFor, SYSCALL_RING_SUBMIT, -1);
+		   scheduleNewProcess();
+	   }
+   }//syscallRingSubmit
+   
+   /**
+    * syscallPipe
+    * opens the pipe with the key specified by the stack, creating it if no
+    * process has it open.  Processes that use the same key share the pipe.
+    * The pipe's descriptor is pushed followed by success.  The descriptor
+    * is used in place of a device number to read, write and close the
+    * pipe.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallPipe()
+   {
+	   int key = m_CPU.popFromStack();
+	   Pipe pipe = null;
+	   for(Pipe p : m_pipeTable.values())
+	   {
+		   if (p.getKey() == key)
+		   {
+			   pipe = p;
+			   break;
+		   }
+	   }
+	   
+	   if (pipe == null)
+	   {
+		   pipe = new Pipe(key, PIPE_CAPACITY);
+		   pipe.setId(m_nextPipeId++);
+		   m_pipeTable.put(pipe.getId(), pipe);
+	   }
+	   else if (pipe.getUsers().contains(m_currProcess))
+	   {
+		   m_CPU.pushToStack(CODE_ALREADY_OPEN);
 		   return;
 	   }
-	   if(d.getDevice().isAvailable())
+	   
+	   pipe.getUsers().add(m_currProcess);
+	   m_CPU.pushToStack(pipe.getId());
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallPipe
+   
+   /**
+    * syscallPipeIO
+    * reads or writes one value on a pipe for the current process.  The
+    * result is pushed as for a device.  If the pipe is empty (read) or full
+    * (write) the process is blocked on the pipe and is woken directly by
+    * the process that provides the value or makes room.
+    * 
+    * @param pipe  the pipe
+    * @param op    SYSCALL_READ or SYSCALL_WRITE
+    * @param value the value to write (ignored for reads)
+    * 
+    * @return void
+    */ 
+   private void syscallPipeIO(Pipe pipe, int op, int value)
+   {
+	   int status = checkPipeIO(pipe);
+	   if (status != CODE_SUCCESS)
 	   {
-		   d.getDevice().write(address,value);
-		   m_currProcess.block(m_CPU, d.device, SYSCALL_READ, address);
+		   m_CPU.pushToStack(status);
+		   return;
 	   }
-	   else //not available
+	   IOScheduler.Request w = new IOScheduler.Request(op, 0, value, m_currProcess);
+	   if(startPipeIO(pipe, w))
 	   {
-		   m_CPU.setPC(m_CPU.getPC() - CPU.INSTRSIZE);   
-		   m_CPU.pushToStack(d.getId());
-		   m_CPU.pushToStack(address);
-		   m_CPU.pushToStack(value);
-		   m_CPU.pushToStack(SYSCALL_WRITE);
+		   if (op == SYSCALL_READ)
+		   {
+			   m_CPU.pushToStack(w.data);
+		   }
+		   m_CPU.pushToStack(CODE_SUCCESS);
+		   return;
 	   }
+	   m_currProcess.block(m_CPU, pipe, op, pipe.getId());
 	   scheduleNewProcess();
-
-
-   }
+   }//syscallPipeIO
    
    /**
-    * syscallOpen
-    * reads from a device at a location
-    * specified by the stack and handles 
-    * some mistakes by pushing error codes
-    * it then blocks the process to wait for IO
+    * findPipe
+    * 
+    * @param desc a pipe descriptor (or anything else)
+    * 
+    * @return the open pipe with that descriptor -OR- null
+    */ 
+   private Pipe findPipe(int desc)
+   {
+	   if ((desc & PIPE_BASE) == 0)
+	   {
+		   return null;         // a device id
+	   }
+	   return m_pipeTable.get(desc);
+   }//findPipe
+   
+   /**
+    * checkPipeIO
+    * checks that the current process may use a pipe
+    * 
+    * @param pipe the pipe
+    * 
+    * @return CODE_SUCCESS or the error code to return to the process
+    */ 
+   private int checkPipeIO(Pipe pipe)
+   {
+	   if (!pipe.getUsers().contains(m_currProcess))
+	   {
+		   return CODE_NOT_OPENED;
+	   }
+	   return CODE_SUCCESS;
+   }//checkPipeIO
+   
+   /**
+    * startPipeIO
+    * moves one value into or out of a pipe.  A write to a pipe with a
+    * waiting reader hands the value straight to the reader.  A read that
+    * makes room lets the oldest waiting writer put its value in.  Waiters
+    * are finished by {@link #completeWordRequest}.
+    * 
+    * @param pipe the pipe
+    * @param w    the request (the value read is stored in w.data if it
+    *             completes right away)
+    * 
+    * @return true if the request completed, false if it has to wait (the
+    *         caller must then block the process that made it)
+    */ 
+   private boolean startPipeIO(Pipe pipe, IOScheduler.Request w)
+   {
+	   chargeIO(w.owner, 1);
+	   if (w.op == SYSCALL_WRITE)
+	   {
+		   if (!pipe.getReaders().isEmpty())
+		   {
+			   pipe.recordHandoff();
+			   completeWordRequest(pipe.getReaders().remove(0), CODE_SUCCESS, w.data);
+			   return true;
+		   }
+		   if (pipe.isFull())
+		   {
+			   pipe.addWriter(w);
+			   return false;
+		   }
+		   pipe.put(w.data);
+		   return true;
+	   }
+	   
+	   if (pipe.isEmpty())
+	   {
+		   pipe.addReader(w);
+		   return false;
+	   }
+	   w.data = pipe.take();
+	   if (!pipe.getWriters().isEmpty())
+	   {
+		   IOScheduler.Request writer = pipe.getWriters().remove(0);
+		   pipe.put(writer.data);
+		   completeWordRequest(writer, CODE_SUCCESS, 0);
+	   }
+	   return true;
+   }//startPipeIO
+   
+   /**
+    * closePipe
+    * removes a process from the processes that have a pipe open.  The pipe
+    * is released once nobody has it open.  If everyone left is waiting on
+    * the pipe nobody can ever satisfy them so their requests fail with
+    * CODE_BROKEN_PIPE.
+    * 
+    * @param pipe the pipe
+    * @param pcb  the process
+    * 
+    * @return CODE_SUCCESS or an error code
+    */ 
+   private int closePipe(Pipe pipe, ProcessControlBlock pcb)
+   {
+	   if (!pipe.getUsers().remove(pcb))
+	   {
+		   return CODE_NOT_OPENED;
+	   }
+	   if (pipe.getUsers().isEmpty())
+	   {
+		   m_pipeTable.remove(pipe.getId());
+		   debugPrintln("Pipe #" + (pipe.getId() - PIPE_BASE) + " released " + pipe);
+		   return CODE_SUCCESS;
+	   }
+	   
+	   Vector<IOScheduler.Request> waiting = new Vector<IOScheduler.Request>(pipe.getReaders());
+	   waiting.addAll(pipe.getWriters());
+	   for(Object user : pipe.getUsers())
+	   {
+		   boolean stuck = false;
+		   for(IOScheduler.Request w : waiting)
+		   {
+			   stuck = stuck || (w.owner == user);
+		   }
+		   if (!stuck)
+		   {
+			   return CODE_SUCCESS;
+		   }
+	   }
+	   
+	   pipe.getReaders().clear();
+	   pipe.getWriters().clear();
+	   for(IOScheduler.Request w : waiting)
+	   {
+		   completeWordRequest(w, CODE_BROKEN_PIPE, 0);
+	   }
+	   return CODE_SUCCESS;
+   }//closePipe
+   
+   /**
+    * syscallShmGet
+    * finds the shared memory segment with the key and size specified by the
+    * stack, creating it (filled with zeros) if there is none.  Processes
+    * that use the same key share the segment.  The segment id is pushed
+    * followed by success.  A size of zero or less, or one larger than an
+    * existing segment with the key, fails with CODE_BAD_ADDRESS.
     * 
     * @param void
     * 
     * @return void
     */ 
-   private void syscallRead()
+   private void syscallShmGet()
    {
-	   int address = m_CPU.popFromStack();
-	   DeviceInfo d = syscallHelper();
-	   if (d == null)
+	   int size = m_CPU.popFromStack();
+	   int key = m_CPU.popFromStack();
+	   for(int i = 0; i < m_segments.size(); i++)
+	   {
+		   SegmentInfo seg = m_segments.get(i);
+		   if (seg.key == key)
+		   {
+			   if (size > seg.size)
+			   {
+				   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+				   return;
+			   }
+			   m_CPU.pushToStack(i);
+			   m_CPU.pushToStack(CODE_SUCCESS);
+			   return;
+		   }
+	   }
+	   
+	   if (size <= 0)
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+		   return;
+	   }
+	   if (m_nextLoadPos + 1 + size > m_RAM.getSize())
+	   {
+		   m_CPU.pushToStack(CODE_NO_MEMORY);
+		   return;
+	   }
+	   
+	   //Take the segment from the same free RAM processes are loaded into.
+	   //The first word is skipped because the stack of the process loaded
+	   //just below starts there.
+	   SegmentInfo seg = new SegmentInfo(key, m_nextLoadPos + 1, size);
+	   m_nextLoadPos += 1 + size;
+	   m_RAM.writeBlock(seg.base, new int[size], 0, size);
+	   m_segments.add(seg);
+	   m_CPU.pushToStack(m_segments.size() - 1);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallShmGet
+   
+   /**
+    * syscallShmAt
+    * maps the shared segment with the id specified by the stack into the
+    * current process' address space by loading the CPU's segment registers.
+    * The segment appears at CPU.SHM_ADDR in every process that attaches it
+    * and replaces any segment the process had attached.  The address is
+    * pushed followed by success.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallShmAt()
+   {
+	   int id = m_CPU.popFromStack();
+	   if ((id < 0) || (id >= m_segments.size()))
 	   {
 		   m_CPU.pushToStack(CODE_NO_DEVICE);
-		  return;
+		   return;
 	   }
-	   if(!d.containsProcess(m_currProcess))
+	   
+	   for(SegmentInfo seg : m_segments)
+	   {
+		   seg.attached.remove(m_currProcess);
+	   }
+	   SegmentInfo seg = m_segments.get(id);
+	   seg.attached.add(m_currProcess);
+	   seg.attaches++;
+	   m_CPU.setSBASE(seg.base);
+	   m_CPU.setSLIM(seg.base + seg.size);
+	   m_CPU.pushToStack(CPU.SHM_ADDR);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallShmAt
+   
+   /**
+    * syscallShmDt
+    * unmaps the current process' shared segment.  Accesses at CPU.SHM_ADDR
+    * and beyond fail from then on.  The segment itself stays in RAM for
+    * other processes.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallShmDt()
+   {
+	   if (m_CPU.getSLIM() <= m_CPU.getSBASE())
 	   {
 		   m_CPU.pushToStack(CODE_NOT_OPENED);
 		   return;
 	   }
-	   if(!d.getDevice().isReadable())
+	   for(SegmentInfo seg : m_segments)
 	   {
-		   m_CPU.pushToStack(CODE_NOT_READABLE);
+		   seg.attached.remove(m_currProcess);
+	   }
+	   m_CPU.setSBASE(0);
+	   m_CPU.setSLIM(0);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallShmDt
+   
+   /**
+    * syscallSbrk
+    * changes the size of the current process' memory by the number of words
+    * on the stack (negative to shrink).  The stack stays at the top of the
+    * memory, so it is moved to the new LIM and the words gained or lost are
+    * just below it.  If the process is the last one in RAM it grows in place
+    * into the free RAM after it.  Otherwise it is copied to the free RAM.
+    * Addresses are relative to BASE so the process doesn't notice the move.
+    * The new size is pushed followed by success.  CODE_NO_MEMORY is pushed
+    * if there isn't enough free RAM, CODE_BAD_ARGUMENT if the memory would
+    * be too small for the loaded program and the stack, and CODE_NOT_SUPPORTED if the process has
+    * threads (their stacks are carved from it).
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallSbrk()
+   {
+	   int delta = m_CPU.popFromStack();
+	   if ((m_currProcess.leader != null) || !m_currProcess.threads.isEmpty())
+	   {
+		   m_CPU.pushToStack(CODE_NOT_SUPPORTED);
+		   return;
+	   }
+	   
+	   int base = m_CPU.getBASE();
+	   int lim = m_CPU.getLIM();
+	   int sp = m_CPU.getSP();
+	   //The bounds are checked in long so a huge delta can't wrap around
+	   long size = (long)lim - base + delta;
+	   if (size - sp < m_currProcess.imageSize)
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ARGUMENT);
 		   return;
 	   }
-	   if(d.getDevice().isAvailable())
+	   if (size > m_RAM.getSize())
 	   {
-		   d.getDevice().read(address);
-		   m_currProcess.block(m_CPU, d.device, SYSCALL_READ, address);
+		   m_CPU.pushToStack(CODE_NO_MEMORY);
+		   return;
 	   }
-	   else //not available
+	   int newSize = (int)size;
+	   m_sbrks++;
+	   
+	   //The stack is the SP words that end at LIM
+	   int[] stack = new int[sp];
+	   m_RAM.readBlock(lim - sp + 1, stack, 0, sp);
+	   
+	   //The last process in RAM (followed only by its free word) can change
+	   //size where it is
+	   if (lim + 1 == m_nextLoadPos)
 	   {
-		   m_CPU.setPC(m_CPU.getPC() - CPU.INSTRSIZE);
-		   
-		   m_CPU.pushToStack(d.getId());
-		   m_CPU.pushToStack(address);
-		   m_CPU.pushToStack(SYSCALL_READ);
+		   if ((long)base + newSize + 1 > m_RAM.getSize())
+		   {
+			   m_CPU.pushToStack(CODE_NO_MEMORY);
+			   return;
+		   }
+		   m_nextLoadPos = base + newSize + 1;
+	   }
+	   else if (delta > 0)
+	   {
+		   //Copy everything below the stack to free RAM
+		   if ((long)m_nextLoadPos + newSize + 1 > m_RAM.getSize())
+		   {
+			   m_CPU.pushToStack(CODE_NO_MEMORY);
+			   return;
+		   }
+		   int len = lim - sp + 1 - base;
+		   int[] image = new int[len];
+		   m_RAM.readBlock(base, image, 0, len);
+		   m_RAM.writeBlock(m_nextLoadPos, image, 0, len);
+		   m_CPU.setPC(m_CPU.getPC() - base + m_nextLoadPos);
+		   base = m_nextLoadPos;
+		   m_CPU.setBASE(base);
+		   m_nextLoadPos = base + newSize + 1;
+		   m_relocations++;
+		   m_wordsMoved += len;
+	   }
+	   
+	   lim = base + newSize;
+	   m_RAM.writeBlock(lim - sp + 1, stack, 0, sp);
+	   m_wordsMoved += sp;
+	   m_CPU.setLIM(lim);
+	   m_CPU.pushToStack(newSize);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallSbrk
+   
+   /**
+    * syscallFutexWait
+    * blocks the current process on a word of its memory (its own or its
+    * shared segment) if the word still holds the value the process expects.
+    * The arguments on the stack are the address of the word and the
+    * expected value.  Success is pushed right away and the process becomes
+    * ready again when another process wakes the word.  If the word has
+    * already changed CODE_TRY_AGAIN is pushed and the process keeps
+    * running.  Guests only make this call once they have found the word
+    * contended with CAS, so an uncontended lock never traps.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallFutexWait()
+   {
+	   int expected = m_CPU.popFromStack();
+	   int addr = m_CPU.popFromStack();
+	   int phys = m_CPU.translate(addr);
+	   if (phys < 0)
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+		   return;
+	   }
+	   if (m_RAM.read(phys) != expected)
+	   {
+		   m_futexes.recordRetry();
+		   m_CPU.pushToStack(CODE_TRY_AGAIN);
+		   return;
+	   }
+	   
+	   m_CPU.pushToStack(CODE_SUCCESS);
+	   m_futexes.add(phys, m_currProcess);
+	   m_currProcess.block(m_CPU, m_futexes, SYSCALL_FUTEX_WAIT, phys);
+	   scheduleNewProcess();
+   }//syscallFutexWait
+   
+   /**
+    * syscallFutexWake
+    * wakes the processes that have waited longest on a word.  The
+    * arguments on the stack are the address of the word and the maximum
+    * number of processes to wake.  The number woken is pushed followed by
+    * success.  Processes in different address spaces wake each other when
+    * the word is in a shared segment they have both attached.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallFutexWake()
+   {
+	   int count = m_CPU.popFromStack();
+	   int addr = m_CPU.popFromStack();
+	   int phys = m_CPU.translate(addr);
+	   if (phys < 0)
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+		   return;
+	   }
+	   
+	   int n = m_futexes.wake(phys, count, m_woken);
+	   for(Object o : m_woken)
+	   {
+		   ((ProcessControlBlock)o).unblock();
+	   }
+	   m_woken.clear();
+	   m_CPU.pushToStack(n);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallFutexWake
+   
+   /**
+    * syscallThreadCreate
+    * starts a thread that shares the current process' memory.  The
+    * arguments on the stack are the label the thread starts at and a value
+    * that is handed to the thread in r0.  The thread gets a copy of the
+    * caller's registers and a stack of THREAD_STACK_SIZE words carved from
+    * the top of the caller's memory, below the stacks of the threads already
+    * running.  It is scheduled like any other process.  The thread id is
+    * pushed followed by success.  CODE_NO_MEMORY is pushed if there is no
+    * room left for another stack above the loaded program.
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallThreadCreate()
+   {
+	   int arg = m_CPU.popFromStack();
+	   int entry = m_CPU.popFromStack();
+	   int base = m_CPU.getBASE();
+	   
+	   //Threads started by a thread belong to the same process
+	   ProcessControlBlock leader = m_currProcess.leader;
+	   if (leader == null)
+	   {
+		   leader = m_currProcess;
+	   }
+	   int lim = (leader == m_currProcess) ? m_CPU.getLIM() : leader.getRegisterValue(CPU.LIM);
+	   if ((entry < 0) || (entry >= lim - base))
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ADDRESS);
+		   return;
+	   }
+	   
+	   //Use the lowest stack slot that is free (slot 0 is the process' own)
+	   int slot = 1;
+	   boolean taken = true;
+	   while (taken)
+	   {
+		   taken = false;
+		   for(ProcessControlBlock t : leader.threads)
+		   {
+			   if (t.stackSlot == slot)
+			   {
+				   taken = true;
+				   slot++;
+				   break;
+			   }
+		   }
+	   }
+	   int stackLim = lim - slot * THREAD_STACK_SIZE;
+	   if (stackLim - THREAD_STACK_SIZE < base + leader.imageSize)
+	   {
+		   m_CPU.pushToStack(CODE_NO_MEMORY);
+		   return;
+	   }
+	   
+	   ProcessControlBlock thread = new ProcessControlBlock(m_nextProcessID);
+	   m_nextProcessID++;
+	   thread.leader = leader;
+	   thread.group = leader.group;
+	   thread.stackSlot = slot;
+	   int[] regs = m_CPU.getRegisters().clone();
+	   regs[0] = arg;
+	   regs[CPU.PC] = base + entry - CPU.INSTRSIZE;
+	   regs[CPU.SP] = 0;
+	   regs[CPU.LIM] = stackLim;
+	   thread.start(regs);
+	   for(SegmentInfo seg : m_segments)
+	   {
+		   if (seg.attached.contains(m_currProcess))
+		   {
+			   seg.attached.add(thread);
+		   }
+	   }
+	   leader.threads.add(thread);
+	   m_processes.add(thread);
+	   m_threadsCreated++;
+	   
+	   m_CPU.pushToStack(thread.getProcessId());
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallThreadCreate
+   
+   /**
+    * syscallThreadJoin
+    * waits for a thread of the current process to exit.  The argument on
+    * the stack is the thread id.  Success is pushed right away if the
+    * thread has already exited.  Otherwise success is pushed and the
+    * process is blocked until the thread exits.  CODE_NO_THREAD is pushed if
+    * the id is not a thread of the same process (or it has already been
+    * joined).
+    * 
+    * @param void
+    * 
+    * @return void
+    */ 
+   private void syscallThreadJoin()
+   {
+	   int tid = m_CPU.popFromStack();
+	   ProcessControlBlock leader = m_currProcess.leader;
+	   if (leader == null)
+	   {
+		   leader = m_currProcess;
+	   }
+	   
+	   if (leader.exitedThreads.remove((Integer)tid))
+	   {
+		   m_CPU.pushToStack(CODE_SUCCESS);
+		   return;
+	   }
+	   boolean found = false;
+	   for(ProcessControlBlock t : leader.threads)
+	   {
+		   if ((t.getProcessId() == tid) && (t != m_currProcess))
+		   {
+			   found = true;
+			   break;
+		   }
+	   }
+	   if (!found)
+	   {
+		   m_CPU.pushToStack(CODE_NO_THREAD);
+		   return;
 	   }
+	   
+	   m_CPU.pushToStack(CODE_SUCCESS);
+	   m_joinWaits++;
+	   m_currProcess.block(m_CPU, m_exitWaits, SYSCALL_THREAD_JOIN, tid);
 	   scheduleNewProcess();
-
-   }
-   
+   }//syscallThreadJoin
    
    /**
     * syscallExec
     *
-    * creates a new process.  The program used to create that process is chosen
-    * semi-randomly from all the programs that have been registered with the OS
-    * via {@link #addProgram}.  Limits are put into place to ensure that each
-    * process is run an equal number of times.  If no programs have been
-    * registered then the simulation is aborted with a fatal error.
+    * creates a new process.  The program that has been used the fewest
+    * times is run (the first one registered on a tie) so that each program
+    * is run an equal number of times.  If no programs have been registered
+    * then the simulation is aborted with a fatal error.
     * 
     * @param void
     * 
@@ -902,45 +3259,189 @@ public class SOS implements CPU.TrapHandler
            System.exit(-1);
        }
        
-       //find out which program has been called the least and record how many
-       //times it has been called
-       int leastCallCount = m_programs.get(0).callCount;
-       for(Program prog : m_programs)
+       //find the program that has been called the least
+       Program prog = m_programs.get(0);
+       for(Program p : m_programs)
        {
-           if (prog.callCount < leastCallCount)
+           if (p.getCallCount() < prog.getCallCount())
            {
-               leastCallCount = prog.callCount;
+               prog = p;
            }
        }
-
-       //Create a vector of all programs that have been called the least number
-       //of times
-       Vector<Program> cands = new Vector<Program>();
-       for(Program prog : m_programs)
-       {
-           cands.add(prog);
-       }
-       
-       //Select a random program from the candidates list
-       Random rand = new Random();
-       int pn = rand.nextInt(m_programs.size());
-       Program prog = cands.get(pn);
-
-       //Determine the address space size using the default if available.
-       //Otherwise, use a multiple of the program size.
-       int allocSize = prog.getDefaultAllocSize();
-       if (allocSize <= 0)
+       execProgram(prog);
+   }//syscallExec
+   
+   /**
+    * syscallExecId
+    *
+    * creates a new process running the program whose id (as returned by
+    * {@link #addProgram}) is on the stack.  Success is pushed onto the
+    * caller's stack before the new process starts.  CODE_NO_PROGRAM is
+    * pushed if no program has that id.
+    * 
+    * @param void
+    * 
+    * @return void
+    */
+   private void syscallExecId()
+   {
+       int id = m_CPU.popFromStack();
+       if ((id < 0) || (id >= m_programs.size()))
        {
-           allocSize = prog.getSize() * 2;
+           m_CPU.pushToStack(CODE_NO_PROGRAM);
+           return;
        }
+       m_CPU.pushToStack(CODE_SUCCESS);
+       execProgram(m_programs.get(id));
+   }//syscallExecId
+   
+   /**
+    * execProgram
+    *
+    * loads a program into a new process that is a child of the current
+    * one and switches to it
+    *
+    * @param prog the program to run
+    */
+   private void execProgram(Program prog)
+   {
+       prog.addCalls(1);
 
        //Load the program into RAM
-       createProcess(prog, allocSize);
+       ProcessControlBlock parent = m_currProcess;
+       createProcess(prog, allocSizeFor(prog));
+       m_currProcess.parent = parent;
+       m_currProcess.group = parent.group;
+       parent.children.add(m_currProcess);
 
        //Adjust the PC since it's about to be incremented by the CPU
        m_CPU.setPC(m_CPU.getPC() - CPU.INSTRSIZE);
 
-   }//syscallExec
+   }//execProgram
+   
+   /**
+    * allocSizeFor
+    *
+    * @param prog a program
+    * @return the address space size for a process running the program (the
+    *         default if it has one, otherwise a multiple of its size)
+    */
+   private int allocSizeFor(Program prog)
+   {
+       int allocSize = prog.getDefaultAllocSize();
+       if (allocSize <= 0)
+       {
+           allocSize = prog.getSize() * 2;
+       }
+       return allocSize;
+   }//allocSizeFor
+   
+   /**
+    * syscallSpawnN
+    * starts several processes running the same program in one call.  The
+    * arguments on the stack are the index of the program (in the order the
+    * programs were given to {@link #addProgram}) and the number of
+    * processes.  The program is exported once, the RAM for every process is
+    * taken in one piece and each image is copied in a single burst.  The new
+    * processes are children of the caller and start out Ready; the caller
+    * keeps running.  SPAWN_TICKS is charged per process instead of a
+    * context switch each.  The number of processes started is pushed
+    * followed by success.  If they don't all fit in RAM none are started
+    * and CODE_NO_MEMORY is pushed.  CODE_BAD_ARGUMENT is pushed if the
+    * number of processes is not positive.
+    * 
+    * @param void
+    * 
+    * @return void
+    */
+   private void syscallSpawnN()
+   {
+	   int count = m_CPU.popFromStack();
+	   int index = m_CPU.popFromStack();
+	   if ((index < 0) || (index >= m_programs.size()))
+	   {
+		   m_CPU.pushToStack(CODE_NO_PROGRAM);
+		   return;
+	   }
+	   if (count <= 0)
+	   {
+		   m_CPU.pushToStack(CODE_BAD_ARGUMENT);
+		   return;
+	   }
+	   
+	   //Take the RAM for the whole batch at once (each process is followed
+	   //by a free word like those loaded by createProcess)
+	   Program prog = m_programs.get(index);
+	   int allocSize = allocSizeFor(prog);
+	   int location = m_nextLoadPos;
+	   if (count > (m_RAM.getSize() - location) / (allocSize + 1))
+	   {
+		   m_CPU.pushToStack(CODE_NO_MEMORY);
+		   return;
+	   }
+	   m_nextLoadPos += count * (allocSize + 1);
+	   
+	   int[] programArray = prog.getImage();
+	   prog.addCalls(count);
+	   Vector<ProcessControlBlock> batch = new Vector<ProcessControlBlock>(count);
+	   for(int i = 0; i < count; i++)
+	   {
+		   m_RAM.writeBlock(location, programArray, 0, programArray.length);
+		   
+		   //The PC is one instruction early because the CPU increments it
+		   //before the first instruction runs
+		   int[] regs = new int[CPU.NUMREG];
+		   regs[CPU.PC] = location - CPU.INSTRSIZE;
+		   regs[CPU.BASE] = location;
+		   regs[CPU.LIM] = location + allocSize;
+		   ProcessControlBlock pcb = new ProcessControlBlock(m_nextProcessID);
+		   m_nextProcessID++;
+		   pcb.start(regs);
+		   pcb.imageSize = programArray.length;
+		   pcb.parent = m_currProcess;
+		   pcb.group = m_currProcess.group;
+		   batch.add(pcb);
+		   location += allocSize + 1;
+	   }
+	   m_processes.addAll(batch);
+	   m_currProcess.children.addAll(batch);
+	   m_CPU.addTicks(SPAWN_TICKS * count);
+	   
+	   m_CPU.pushToStack(count);
+	   m_CPU.pushToStack(CODE_SUCCESS);
+   }//syscallSpawnN
+   
+   /**
+    * syscallWait
+    * waits for a child of the current process to exit.  If a child has
+    * already exited it is reaped right away.  Otherwise the process is
+    * blocked and the first child to exit wakes it from its exit path.  The
+    * child's id is pushed, then its exit code and then success.
+    * CODE_NO_CHILD is pushed if the process has no children.
+    * 
+    * @param void
+    * 
+    * @return void
+    */
+   private void syscallWait()
+   {
+	   for(ProcessControlBlock child : m_currProcess.children)
+	   {
+		   if (child.exited)
+		   {
+			   reapChild(m_currProcess, child);
+			   return;
+		   }
+	   }
+	   if (m_currProcess.children.isEmpty())
+	   {
+		   m_CPU.pushToStack(CODE_NO_CHILD);
+		   return;
+	   }
+	   
+	   m_currProcess.block(m_CPU, m_exitWaits, SYSCALL_WAIT, -1);
+	   scheduleNewProcess();
+   }//syscallWait
 
 
 /**
@@ -1000,10 +3501,32 @@ public class SOS implements CPU.TrapHandler
      * @param dev     the device driver
      * @param id      the id to assign to this device
      * 
+     * @throws IllegalArgumentException if the id is negative or has the
+     *         PIPE_BASE bit that marks pipe descriptors
      */
     public void registerDevice(Device dev, int id)
     {
-        m_devices.add(new DeviceInfo(dev, id));
+        if ((id < 0) || ((id & PIPE_BASE) != 0))
+        {
+            throw new IllegalArgumentException("device id " + id
+                                               + " is not a valid device id");
+        }
+        DeviceInfo di = new DeviceInfo(dev, id);
+        m_devices.add(di);
+        m_deviceTable.put(id, di);
+        
+        //Someone is usually waiting on a keyboard so serve it first.  Disk
+        //completions are the least urgent.
+        int priority = InterruptController.PRIORITY_NORMAL;
+        if (dev instanceof DiskDevice)
+        {
+            priority = InterruptController.PRIORITY_LOW;
+        }
+        else if (dev.isReadable())
+        {
+            priority = InterruptController.PRIORITY_HIGH;
+        }
+        m_CPU.getInterruptController().setPriority(id, priority);
     }//registerDevice
     
   //======================================================================
@@ -1072,6 +3595,86 @@ public class SOS implements CPU.TrapHandler
          */
         private double avgStarve = 0;
         
+        /**
+         * If this is a thread, the process whose memory it shares (null for
+         * a process)
+         */
+        private ProcessControlBlock leader = null;
+        
+        /**
+         * If this is a thread, which of the stacks carved from the top of the
+         * process' memory it uses (the process itself uses slot 0)
+         */
+        private int stackSlot = 0;
+        
+        /**
+         * The running threads of this process
+         */
+        private Vector<ProcessControlBlock> threads = new Vector<ProcessControlBlock>();
+        
+        /**
+         * The ids of threads of this process that exited before anyone
+         * joined them
+         */
+        private Vector<Integer> exitedThreads = new Vector<Integer>();
+        
+        /**
+         * The process that created this one with SYSCALL_EXEC (null if there
+         * is none or it has exited)
+         */
+        private ProcessControlBlock parent = null;
+        
+        /**
+         * The processes this one created that are running or have exited
+         * and not been waited for
+         */
+        private Vector<ProcessControlBlock> children = new Vector<ProcessControlBlock>();
+        
+        /**
+         * true once the process has exited (a zombie until its parent waits)
+         */
+        private boolean exited = false;
+        
+        /**
+         * The value the process passed to SYSCALL_EXIT_CODE
+         */
+        private int exitCode = 0;
+        
+        //Accounting
+        private int dispatchTime = 0;       // when the process last got the CPU
+        private long cpuTicks = 0;          // ticks on the CPU (user and kernel)
+        private long kernelTicks = 0;       // ticks spent serving its system calls
+        private int voluntarySwitches = 0;  // times it blocked, yielded or exited
+        private int involuntarySwitches = 0; // times the clock took the CPU away
+        private long ioRequests = 0;        // word, block and pipe requests
+        private long ioWords = 0;           // words those requests moved
+        private int blockTime = 0;          // when the process last blocked
+        /** ticks spent blocked on each device (see {@link #blockLabel}) */
+        private HashMap<String, Long> blockedTicks = new HashMap<String, Long>();
+        private long windowTicks = 0;       // CPU ticks used in the quota window
+        private long windowIO = 0;          // I/O words moved in the quota window
+        private boolean throttled = false;  // held back for the rest of the window
+        
+        /**
+         * The process group this process belongs to
+         */
+        private int group = 0;
+        
+        /**
+         * The number of words of program loaded at BASE (the process' memory
+         * may not shrink below this plus its stack)
+         */
+        private int imageSize = 0;
+        
+        //Real-time class (a period of 0 means the process is best effort)
+        private int rtPeriod = 0;           // ticks between deadlines
+        private int rtBudget = 0;           // CPU ticks allowed per period
+        private int rtDeadline = 0;         // end of the current period
+        private long rtUsed = 0;            // CPU ticks used this period (to the last charge)
+        private boolean rtDone = false;     // finished this period's work
+        private long rtPeriods = 0;         // periods that have ended
+        private long rtMisses = 0;          // periods that ended before the work was done
+        private int rtChargeTime = 0;       // when rtUsed was last brought up to date
         
 
         /**
@@ -1083,6 +3686,21 @@ public class SOS implements CPU.TrapHandler
          */
         public void save(CPU cpu)
         {
+            //Charge the process for its time on the CPU
+            int now = m_CPU.getTicks();
+            rtCharge();
+            cpuTicks += now - dispatchTime;
+            chargeGroups(group, now - dispatchTime);
+            windowTicks += now - Math.max(dispatchTime, m_windowStart);
+            if (m_preempting && !isBlocked())
+            {
+                involuntarySwitches++;
+            }
+            else
+            {
+                voluntarySwitches++;
+            }
+            
             //A context switch is expensive.  We simluate that here by 
             //adding ticks to m_CPU
             m_CPU.addTicks(SAVE_LOAD_TIME);
@@ -1135,8 +3753,24 @@ public class SOS implements CPU.TrapHandler
             double d_numReady = (double)numReady;
             avgStarve = avgStarve * (d_numReady - 1.0) / d_numReady;
             avgStarve = avgStarve + (starveTime * (1.0 / d_numReady));
+            dispatchTime = m_CPU.getTicks();
         }//restore
          
+        /**
+         * start
+         *
+         * gives a process that has never run its registers and puts it in
+         * the Ready state as if it had just been switched out
+         *
+         * @param regs the registers the process starts with
+         */
+        public void start(int[] regs)
+        {
+            this.registers = regs;
+            numReady = 1;
+            lastReadyTime = m_CPU.getTicks();
+        }//start
+         
         /**
          * unblock
          *
@@ -1146,6 +3780,15 @@ public class SOS implements CPU.TrapHandler
          */
         public void unblock()
         {
+            //Add the wait to the time spent blocked on the device
+            if (blockedForDevice != null)
+            {
+                String label = blockLabel(blockedForDevice, blockedForOperation);
+                Long total = blockedTicks.get(label);
+                blockedTicks.put(label, ((total == null) ? 0 : total)
+                                 + m_CPU.getTicks() - blockTime);
+            }
+            
             //Reset the info about the block
             blockedForDevice = null;
             blockedForOperation = -1;
@@ -1177,6 +3820,7 @@ public class SOS implements CPU.TrapHandler
             blockedForDevice = dev;
             blockedForOperation = op;
             blockedForAddr = addr;
+            blockTime = m_CPU.getTicks();
             
         }//block
         
@@ -1285,7 +3929,120 @@ public class SOS implements CPU.TrapHandler
         public ProcessControlBlock(int pid)
         {
             this.processId = pid;
+            this.group = pid;
+            this.dispatchTime = m_CPU.getTicks();
+        }
+        
+        /**
+         * getCpuTicks
+         *
+         * @return the ticks this process has been on the CPU (including the
+         *         current run if it is running)
+         */
+        public long getCpuTicks()
+        {
+            if (this == m_currProcess)
+            {
+                return cpuTicks + m_CPU.getTicks() - dispatchTime;
+            }
+            return cpuTicks;
+        }
+        
+        /**
+         * rtCharge
+         *
+         * adds the time the process has been on the CPU since the last
+         * charge to the budget used in its current period
+         */
+        public void rtCharge()
+        {
+            if (this == m_currProcess)
+            {
+                int from = Math.max(Math.max(dispatchTime, rtChargeTime),
+                                    rtDeadline - rtPeriod);
+                rtUsed += Math.max(0, m_CPU.getTicks() - from);
+            }
+            rtChargeTime = m_CPU.getTicks();
+        }//rtCharge
+        
+        /**
+         * getBudgetUsed
+         *
+         * @return the CPU ticks the process has used in its current period
+         */
+        public long getBudgetUsed()
+        {
+            rtCharge();
+            return rtUsed;
+        }
+        
+        /**
+         * getWindowTicks
+         *
+         * @return the ticks this process has been on the CPU in the current
+         *         quota window
+         */
+        public long getWindowTicks()
+        {
+            if (this == m_currProcess)
+            {
+                return windowTicks + m_CPU.getTicks() - Math.max(dispatchTime, m_windowStart);
+            }
+            return windowTicks;
         }
+        
+        /**
+         * getFootprint
+         *
+         * @return the words of RAM this process uses: its memory (or its
+         *         stack for a thread) and the shared segments it has attached
+         */
+        public int getFootprint()
+        {
+            int words = THREAD_STACK_SIZE;
+            if (leader == null)
+            {
+                words = (this == m_currProcess) ? m_CPU.getLIM() - m_CPU.getBASE()
+                    : ((registers == null) ? 0 : registers[CPU.LIM] - registers[CPU.BASE]);
+            }
+            for(SegmentInfo seg : m_segments)
+            {
+                if (seg.attached.contains(this))
+                {
+                    words += seg.size;
+                }
+            }
+            return words;
+        }//getFootprint
+        
+        /**
+         * accountingString
+         *
+         * @return the resources this process has used
+         */
+        public String accountingString()
+        {
+            long cpu = getCpuTicks();
+            String result = (cpu - kernelTicks) + " user ticks, " + kernelTicks
+                + " kernel ticks, " + voluntarySwitches + " voluntary and "
+                + involuntarySwitches + " involuntary switches, " + ioRequests
+                + " I/O requests (" + ioWords + " words), " + getFootprint()
+                + " words of RAM";
+            if (rtPeriods > 0)
+            {
+                result = result + ", " + rtMisses + " of " + rtPeriods
+                    + " deadlines missed";
+            }
+            if (!blockedTicks.isEmpty())
+            {
+                result = result + ", blocked";
+                for(String label : blockedTicks.keySet())
+                {
+                    result = result + " " + label + "=" + blockedTicks.get(label);
+                }
+            }
+            return result;
+        }//accountingString
 
         /**
          * @return the current process' id
@@ -1348,6 +4105,26 @@ public class SOS implements CPU.TrapHandler
                 {
                     result = result + "OPEN";
                 }
+                else if (blockedForOperation == SYSCALL_READ)
+                {
+                    result = result + "READ @" + blockedForAddr;
+                }
+                else if (blockedForOperation == SYSCALL_RING_SUBMIT)
+                {
+                    result = result + "RING";
+                }
+                else if (blockedForOperation == SYSCALL_FUTEX_WAIT)
+                {
+                    result = result + "FUTEX @" + blockedForAddr;
+                }
+                else if (blockedForOperation == SYSCALL_WAIT)
+                {
+                    result = result + "WAIT";
+                }
+                else if (blockedForOperation == SYSCALL_THREAD_JOIN)
+                {
+                    result = result + "JOIN " + blockedForAddr;
+                }
                 else
                 {
                     result = result + "WRITE @" + blockedForAddr;
@@ -1392,6 +4169,7 @@ public class SOS implements CPU.TrapHandler
             result = result + "\n\t\t\t";
             result = result + " Max Starve Time: " + maxStarve;
             result = result + " Avg Starve Time: " + avgStarve;
+            result = result + "\n\t\t\t " + accountingString();
         
             return result;
         }//toString
@@ -1412,6 +4190,24 @@ public class SOS implements CPU.TrapHandler
         private Device device;
         /** a list of processes that have opened this device */
         private Vector<ProcessControlBlock> procs;
+        /** the requests waiting to be issued to this device */
+        private IOScheduler scheduler;
+        /** the request the device is currently working on (if any) */
+        private IOScheduler.Request inFlight = null;
+        /** the block buffer cache (disks only) */
+        private BufferCache cache = null;
+        /** the type-ahead buffer (readable character devices only) */
+        private TypeAheadBuffer typeAhead = null;
+        /** reads waiting for the type-ahead buffer, in arrival order */
+        private Vector<IOScheduler.Request> typeAheadWaiters = null;
+        /** true if the device's interrupts are masked and it is polled */
+        private boolean polling = false;
+        /** completions during the current rate window */
+        private int windowCompletions = 0;
+        /** polling statistics */
+        private int pollEnters = 0;
+        private int pollExits = 0;
+        private int interruptsAvoided = 0;
 
         /**
          * constructor
@@ -1426,6 +4222,18 @@ public class SOS implements CPU.TrapHandler
             this.device = d;
             d.setId(initID);
             this.procs = new Vector<ProcessControlBlock>();
+            int policy = IOScheduler.POLICY_FCFS;
+            if (d instanceof DiskDevice)
+            {
+                policy = m_diskPolicy;
+                this.cache = new BufferCache(CACHE_FRAMES);
+            }
+            else if (d.isReadable())
+            {
+                this.typeAhead = new TypeAheadBuffer(TYPEAHEAD_SIZE);
+                this.typeAheadWaiters = new Vector<IOScheduler.Request>();
+            }
+            this.scheduler = new IOScheduler(d, policy);
         }
 
         /** @return the device's id */
@@ -1466,4 +4274,147 @@ public class SOS implements CPU.TrapHandler
         
     }//class DeviceInfo        
     
+    /**
+     * class RingBatch
+     *
+     * This class tracks the requests of one submission ring that are still
+     * outstanding and posts their results to the ring's completion entries.
+     */
+    private class RingBatch
+    {
+        /** the process that submitted the ring */
+        private ProcessControlBlock owner;
+        /** the RAM address of the first completion entry */
+        private int results;
+        /** the number of entries that have not completed yet */
+        private int pending = 0;
+
+        /**
+         * constructor
+         *
+         * @param owner   the process that submitted the ring
+         * @param results the RAM address of the first completion entry
+         */
+        public RingBatch(ProcessControlBlock owner, int results)
+        {
+            this.owner = owner;
+            this.results = results;
+        }
+
+        /** Write the result of an entry to its completion entry */
+        public void post(int slot, int status, int value)
+        {
+            m_RAM.write(results + slot * RING_RESULT_SIZE, status);
+            m_RAM.write(results + slot * RING_RESULT_SIZE + 1, value);
+        }
+
+        /**
+         * Post the result of an entry that had to wait for its device and
+         * wake the owner once the last one is in
+         */
+        public void complete(int slot, int status, int value)
+        {
+            post(slot, status, value);
+            pending--;
+            if (pending == 0)
+            {
+                owner.unblock();
+            }
+        }
+        
+    }//class RingBatch
+    
+    /**
+     * class SegmentInfo
+     *
+     * This class contains information about a shared memory segment.
+     */
+    private class SegmentInfo
+    {
+        /** the key processes use to find the segment */
+        private int key;
+        /** the RAM address of the first word */
+        private int base;
+        /** the number of words */
+        private int size;
+        /** the processes that have the segment attached */
+        private Vector<ProcessControlBlock> attached = new Vector<ProcessControlBlock>();
+        /** the number of times the segment has been attached */
+        private int attaches = 0;
+
+        /**
+         * constructor
+         *
+         * @param key  the key processes use to find the segment
+         * @param base the RAM address of the first word
+         * @param size the number of words
+         */
+        public SegmentInfo(int key, int base, int size)
+        {
+            this.key = key;
+            this.base = base;
+            this.size = size;
+        }
+
+        /** @return a summary of the segment */
+        public String toString()
+        {
+            return "key " + key + ": " + size + " words at " + base + ", "
+                + attaches + " attaches, " + attached.size() + " attached now";
+        }
+        
+    }//class SegmentInfo
+    
+    /**
+     * class GroupInfo
+     *
+     * This class contains information about a process group.  The groups
+     * share the CPU in proportion to their weights: the scheduler runs the
+     * group with the smallest pass (CPU ticks divided by weight).
+     */
+    private class GroupInfo
+    {
+        /** the id of the group (the id of the process that started it) */
+        private int id;
+        /** the group's share of the CPU relative to other groups */
+        private int weight = 1;
+        /** the CPU ticks used by the group's processes */
+        private long ticks = 0;
+        /** the CPU ticks used scaled by the weight */
+        private double pass = 0;
+        /** the CPU ticks used by all groups while this one was competing */
+        private long available = 0;
+        /** the part of those ticks the group's weight entitled it to */
+        private double entitled = 0;
+
+        /**
+         * constructor
+         *
+         * @param id the id of the group
+         */
+        public GroupInfo(int id)
+        {
+            this.id = id;
+        }
+
+        /**
+         * charge
+         *
+         * adds CPU time used by a process in the group
+         *
+         * @param n the number of ticks
+         */
+        public void charge(int n)
+        {
+            ticks += n;
+            pass += (double)n / weight;
+        }
+
+        /** @return a summary of the group */
+        public String toString()
+        {
+            return id + " (weight " + weight + "): " + ticks + " ticks";
+        }
+    }//class GroupInfo
+    
 };//class SOS
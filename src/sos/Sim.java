@@ -1,6 +1,7 @@
 package sos;
 
 import java.util.*;
+import java.io.*;
 
 /**
  * This class sets up the SOS simulation by creating the RAM, CPU and SOS
@@ -54,6 +55,16 @@ public class Sim
         {
         	//do nothing
         }
+        
+        public void checkWrite(String file) 
+        {
+        	//do nothing (the disk device needs its backing file)
+        }
+        
+        public void checkDelete(String file) 
+        {
+        	//do nothing
+        }
     }//ExitCatcher
 
     /**
@@ -86,6 +97,10 @@ public class Sim
     private static ExitCatcher m_EC = new ExitCatcher();
     private static DoNothingHandler m_DNH = new DoNothingHandler();
     private static CPU m_CPU = null; //init'd by various tests
+    private static int m_diskPolicy = IOScheduler.POLICY_FCFS; //set by main
+    private static ConsoleSink m_consoleSink = new ConsoleSink.PrintSink(); //set by main
+    private static KeyboardSource m_keyboardSource = new KeyboardSource.RandomSource(); //set by main
+    private static boolean m_zeroLatency = false; //set by main
     
     /*======================================================================-
      * Methods
@@ -105,16 +120,29 @@ public class Sim
         //Create the simulated hardware and OS
         RAM ram = new RAM(50000, 0);
         InterruptController ic = new InterruptController();
-        KeyboardDevice kd = new KeyboardDevice(ic, 4999, 5001);
-        ConsoleDevice cd = new ConsoleDevice(ic, 749, 751);
-        kd.setId(0);
-        cd.setId(1);
+        DeviceRuntime devices = new DeviceRuntime(ic);
+        devices.setUncaughtExceptionHandler(m_DNH);
+        KeyboardDevice kd = devices.addKeyboard(4999, 5001); // device #0
+        kd.setSource(m_keyboardSource);
+        kd.setZeroLatency(m_zeroLatency);
+        devices.addConsole(749, 751).setSink(m_consoleSink); // device #1
+        try
+        {
+            File diskFile = File.createTempFile("sos", ".disk");
+            diskFile.deleteOnExit();
+            devices.addDisk(diskFile.getPath(), 1024); // device #2
+        }
+        catch(IOException e)
+        {
+            System.out.println("ERROR: Could not create the disk: " + e);
+            return;
+        }
         m_CPU = new CPU(ram, ic);
         SOS os  = new SOS(m_CPU, ram);
 
         //Register the device drivers with the OS
-        os.registerDevice(kd, 0);
-        os.registerDevice(cd, 1);
+        devices.registerWith(os);
+        os.setDiskSchedulingPolicy(m_diskPolicy);
 
         //Load the program into RAM
         Program prog = new Program();
@@ -143,15 +171,10 @@ public class Sim
         os.addProgram(prog3);
         
         //Start up the devices
-        Thread t = new Thread(cd);
-        t.setUncaughtExceptionHandler(m_DNH);
-        t.start();
-        t = new Thread(kd);
-        t.setUncaughtExceptionHandler(m_DNH);
-        t.start();
+        devices.start();
         
         //Run the simulation
-        t = new Thread(m_CPU);
+        Thread t = new Thread(m_CPU);
         t.setUncaughtExceptionHandler(m_DNH);
         t.start();
 
@@ -171,14 +194,102 @@ public class Sim
         
     }//runSchedulerTest
 
+    /**
+     * createConsoleSink
+     *
+     * @param name "print", "buffered", "discard" or the name of a log file
+     * @return the matching console sink
+     */
+    private static ConsoleSink createConsoleSink(String name) throws IOException
+    {
+        if (name.equalsIgnoreCase("print"))
+        {
+            return new ConsoleSink.PrintSink();
+        }
+        if (name.equalsIgnoreCase("buffered"))
+        {
+            return new ConsoleSink.BufferedSink();
+        }
+        if (name.equalsIgnoreCase("discard"))
+        {
+            return new ConsoleSink.DiscardSink();
+        }
+        return new ConsoleSink.MappedFileSink(name);
+    }//createConsoleSink
+
+    /**
+     * createKeyboardSource
+     *
+     * @param name "random", "seed=N" or the name of a recorded input file
+     * @return the matching keyboard source
+     */
+    private static KeyboardSource createKeyboardSource(String name) throws IOException
+    {
+        if (name.equalsIgnoreCase("random"))
+        {
+            return new KeyboardSource.RandomSource();
+        }
+        if (name.startsWith("seed="))
+        {
+            return new KeyboardSource.SeededSource(Long.parseLong(name.substring(5)));
+        }
+        return new KeyboardSource.FileSource(name);
+    }//createKeyboardSource
+
     /**
      * main
      *
      * This function makes the simulation go.
      *
+     * @param args optionally, the name of the disk scheduling policy to use
+     *             (FCFS, SSTF, SCAN, CSCAN or DEADLINE) followed by where the
+     *             console output goes (print, buffered, discard or the name
+     *             of a log file), where the keyboard input comes from
+     *             (random, seed=N or the name of a recorded input file) and
+     *             "fast" to turn off the keyboard latency
      */
     public static void main(String[] args)
     {
+        //Select the disk scheduling policy
+        if (args.length > 0)
+        {
+            m_diskPolicy = IOScheduler.parsePolicy(args[0]);
+            if (m_diskPolicy < 0)
+            {
+                System.out.println("ERROR: Unknown disk scheduling policy: " + args[0]);
+                return;
+            }
+        }
+
+        //Select where the console output goes
+        if (args.length > 1)
+        {
+            try
+            {
+                m_consoleSink = createConsoleSink(args[1]);
+            }
+            catch(IOException e)
+            {
+                System.out.println("ERROR: Could not open the console log: " + e);
+                return;
+            }
+        }
+
+        //Select where the keyboard input comes from
+        if (args.length > 2)
+        {
+            try
+            {
+                m_keyboardSource = createKeyboardSource(args[2]);
+            }
+            catch(IOException | NumberFormatException e)
+            {
+                System.out.println("ERROR: Could not open the keyboard input: " + e);
+                return;
+            }
+        }
+        m_zeroLatency = (args.length > 3) && args[3].equalsIgnoreCase("fast");
+
         //Start catching System.exit
         System.setSecurityManager(m_EC);
 
@@ -216,6 +327,9 @@ public class Sim
             try{ System.exit(-42); } catch (SecurityException se) { }
         }
 
+        //Make sure all the console output has been written
+        m_consoleSink.close();
+
         //Print the final timing info for the user
         System.out.println("");
         System.out.println("");
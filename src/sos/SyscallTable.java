@@ -0,0 +1,241 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is the OS's table of system calls.  Each system call number
+ * maps to an entry that holds the handler for the call and counters that
+ * measure what the call costs: how often it is made, the CPU ticks and host
+ * time spent in the kernel serving it, how often it returned an error code
+ * and how often it blocked the caller.  The counters are plain fields so
+ * that recording a call never allocates.
+ *
+ * New system calls are added with {@link #register} instead of editing the
+ * dispatch code.
+ *
+ * @see SOS
+ */
+public class SyscallTable
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** system call numbers must be less than this */
+    public static final int MAX_SYSCALLS = 64;
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * interface Handler
+     *
+     * the code that serves a system call.  Arguments are popped from the
+     * calling process' stack and results pushed back onto it.
+     */
+    public interface Handler
+    {
+        public void call();
+    };//interface Handler
+
+    /**
+     * class Entry
+     *
+     * a single system call and its statistics
+     */
+    public static class Entry
+    {
+        /** the name of the system call (for reports) */
+        private String name;
+        /** the code that serves it */
+        private Handler handler;
+        /** true if the call pushes a status code last */
+        private boolean returnsStatus;
+
+        //Statistics
+        private long invocations = 0;   // times the call was made
+        private long ticks = 0;         // CPU ticks spent serving it
+        private long nanos = 0;         // host time spent serving it
+        private long errors = 0;        // calls that returned an error code
+        private long blocks = 0;        // calls that blocked the caller
+
+        public Entry(String name, boolean returnsStatus, Handler handler)
+        {
+            this.name = name;
+            this.returnsStatus = returnsStatus;
+            this.handler = handler;
+        }
+
+        /** @return the name of the system call */
+        public String getName()
+        {
+            return name;
+        }
+
+        /** @return the code that serves the system call */
+        public Handler getHandler()
+        {
+            return handler;
+        }
+
+        /** @return true if the call pushes a status code last */
+        public boolean returnsStatus()
+        {
+            return returnsStatus;
+        }
+
+        /** @return the number of times the call was made */
+        public long getInvocations()
+        {
+            return invocations;
+        }
+
+        /** @return the host time spent serving the call (in nanoseconds) */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /**
+         * record
+         *
+         * adds one call to the statistics
+         *
+         * @param ticks   the CPU ticks spent serving it
+         * @param nanos   the host time spent serving it
+         * @param error   true if it returned an error code
+         * @param blocked true if it blocked the caller
+         */
+        public void record(long ticks, long nanos, boolean error, boolean blocked)
+        {
+            this.invocations++;
+            this.ticks += ticks;
+            this.nanos += nanos;
+            if (error)
+            {
+                this.errors++;
+            }
+            if (blocked)
+            {
+                this.blocks++;
+            }
+        }//record
+
+        /**
+         * toString
+         *
+         * @return a summary of the call's statistics
+         */
+        public String toString()
+        {
+            return name + ": " + invocations + " calls, " + ticks + " ticks, "
+                + String.format("%.3f", nanos / 1000000.0) + "ms (avg "
+                + ((invocations == 0) ? 0 : nanos / invocations) + "ns), "
+                + errors + " errors, " + blocks + " blocked";
+        }//toString
+    }//class Entry
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private Entry[] m_entries = new Entry[MAX_SYSCALLS]; // indexed by call number
+    private long m_unknown = 0;         // calls made with an unregistered number
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * register
+     *
+     * adds a system call to the table
+     *
+     * @param num           the system call number
+     * @param name          the name of the call (for reports)
+     * @param returnsStatus true if the call pushes a status code last
+     * @param handler       the code that serves the call
+     *
+     * @throws IllegalArgumentException if the number is out of range or
+     *         already taken
+     */
+    public void register(int num, String name, boolean returnsStatus, Handler handler)
+    {
+        if ((num < 0) || (num >= MAX_SYSCALLS))
+        {
+            throw new IllegalArgumentException("system call number " + num
+                                               + " is out of range");
+        }
+        if (m_entries[num] != null)
+        {
+            throw new IllegalArgumentException("system call number " + num
+                                               + " is already used by "
+                                               + m_entries[num].getName());
+        }
+        m_entries[num] = new Entry(name, returnsStatus, handler);
+    }//register
+
+    /**
+     * lookup
+     *
+     * @param num the system call number
+     * @return the entry for the call -OR- null if there is none
+     */
+    public Entry lookup(int num)
+    {
+        if ((num < 0) || (num >= MAX_SYSCALLS))
+        {
+            return null;
+        }
+        return m_entries[num];
+    }//lookup
+
+    /**
+     * recordUnknown
+     *
+     * counts a call made with a number that has no entry
+     */
+    public void recordUnknown()
+    {
+        m_unknown++;
+    }
+
+    /**
+     * getTotalNanos
+     *
+     * @return the host time spent serving every system call
+     */
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for(Entry e : m_entries)
+        {
+            if (e != null)
+            {
+                total += e.getNanos();
+            }
+        }
+        return total;
+    }//getTotalNanos
+
+    /**
+     * toString
+     *
+     * @return a summary of all system calls
+     */
+    public String toString()
+    {
+        long calls = 0;
+        for(Entry e : m_entries)
+        {
+            if (e != null)
+            {
+                calls += e.getInvocations();
+            }
+        }
+        return calls + " calls, " + String.format("%.3f", getTotalNanos() / 1000000.0)
+            + "ms in the kernel, " + m_unknown + " unknown";
+    }//toString
+
+};//class SyscallTable
@@ -0,0 +1,107 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class represents the system timer.  Unlike the other devices it has no
+ * thread of its own: it is driven by the CPU clock and the OS keeps its
+ * pending deadlines in a {@link TimingWheel}.  Processes that are sleeping
+ * are blocked on this device so that the scheduler treats them like any
+ * other process that is waiting for I/O.
+ *
+ * The timer is private to the OS.  It is not registered with a
+ * {@link DeviceRuntime} and cannot be opened, read or written by a process.
+ *
+ * @see SOS
+ * @see TimingWheel
+ */
+public class TimerDevice implements Device
+{
+    private int m_Id = -1;             // the timer is not in the device table
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * Any number of processes can sleep at once
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true (the timer never has a request in progress)
+     */
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return false
+     */
+    public boolean isReadable()
+    {
+        return false;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return false
+     */
+    public boolean isWriteable()
+    {
+        return false;
+    }
+
+    /**
+     * read
+     *
+     * not implemented
+     */
+    public int read(int addr)
+    {
+        //This method should never be called
+        return -1;
+    }
+
+    /**
+     * write
+     *
+     * not implemented
+     */
+    public void write(int addr, int data)
+    {
+        //This method should never be called
+    }
+
+};//class TimerDevice
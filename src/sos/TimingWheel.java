@@ -0,0 +1,264 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class keeps track of timer deadlines (in CPU ticks) for the OS using a
+ * hierarchical timing wheel.  There are LEVELS wheels of SLOTS slots each.
+ * Level 0 has one slot per tick, level 1 one slot per SLOTS ticks and so on.
+ * A timer is filed in the lowest level whose range covers its deadline and
+ * is moved down a level (cascaded) when the wheel below wraps around to it.
+ * Adding a timer and expiring one are both O(1) no matter how many timers
+ * are pending.
+ *
+ * Each level also keeps a bitmap of its non-empty slots so that the time of
+ * the next event can be found without scanning the slots.
+ *
+ * The wheel only manages state.  The OS advances it from the clock interrupt
+ * and decides what to do with the timers that expire.
+ *
+ * @see SOS
+ * @see TimerDevice
+ */
+public class TimingWheel
+{
+    //======================================================================
+    // Constants
+    //----------------------------------------------------------------------
+
+    /** the number of bits of the deadline used to pick a slot in one level */
+    public static final int BITS = 6;
+
+    /** the number of slots in each level */
+    public static final int SLOTS = 1 << BITS;
+
+    /** the number of levels */
+    public static final int LEVELS = 4;
+
+    /** timers further away than this are parked in the top level */
+    public static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    //======================================================================
+    // Inner Classes
+    //----------------------------------------------------------------------
+
+    /**
+     * class Timer
+     *
+     * a single pending deadline
+     */
+    public static class Timer
+    {
+        /** the tick at which the timer expires */
+        public long deadline;
+        /** whoever is waiting for the timer (a process in SOS) */
+        public Object owner;
+        /** the next timer in the same slot */
+        private Timer next = null;
+    }//class Timer
+
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private Timer[][] m_slots = new Timer[LEVELS][SLOTS]; // the slot lists
+    private long[] m_occupied = new long[LEVELS]; // bit i set if slot i is non-empty
+    private long m_current = 0;         // the last tick that has been processed
+    private int m_size = 0;             // number of pending timers
+
+    //Statistics
+    private long m_added = 0;           // timers added
+    private long m_expired = 0;         // timers expired
+    private long m_cascaded = 0;        // times a timer moved down a level
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param now the current tick
+     */
+    public TimingWheel(long now)
+    {
+        m_current = now;
+    }//ctor
+
+    /**
+     * size
+     *
+     * @return the number of pending timers
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * add
+     *
+     * schedules a timer.  A deadline that has already passed expires on the
+     * next tick.
+     *
+     * @param deadline the tick at which the timer should expire
+     * @param owner    whoever is waiting for it
+     * @return the new timer
+     */
+    public Timer add(long deadline, Object owner)
+    {
+        Timer t = new Timer();
+        t.deadline = Math.max(deadline, m_current + 1);
+        t.owner = owner;
+        file(t);
+        m_size++;
+        m_added++;
+        return t;
+    }//add
+
+    /**
+     * file
+     *
+     * puts a timer in the slot that covers its deadline
+     */
+    private void file(Timer t)
+    {
+        long delta = t.deadline - m_current;
+        long when = (delta < MAX_SPAN) ? t.deadline : m_current + MAX_SPAN - 1;
+
+        int level = 0;
+        while ((level < LEVELS - 1) && (delta >= (1L << (BITS * (level + 1)))))
+        {
+            level++;
+        }
+
+        int slot = (int)((when >>> (BITS * level)) & (SLOTS - 1));
+        t.next = m_slots[level][slot];
+        m_slots[level][slot] = t;
+        m_occupied[level] |= (1L << slot);
+    }//file
+
+    /**
+     * takeSlot
+     *
+     * empties a slot
+     *
+     * @return the timers that were in it
+     */
+    private Timer takeSlot(int level, int slot)
+    {
+        Timer list = m_slots[level][slot];
+        m_slots[level][slot] = null;
+        m_occupied[level] &= ~(1L << slot);
+        return list;
+    }//takeSlot
+
+    /**
+     * advance
+     *
+     * moves the wheel forward to the given tick and collects the owners of
+     * every timer that expired on the way
+     *
+     * @param now     the current tick
+     * @param expired the owners of the expired timers are appended to this
+     * @return the number of timers that expired
+     */
+    public int advance(long now, Vector<Object> expired)
+    {
+        int count = 0;
+        while (m_current < now)
+        {
+            //Skip straight to the next tick that has work (if it is before now)
+            long next = nextEvent();
+            if ((next < 0) || (next > now))
+            {
+                m_current = now;
+                break;
+            }
+            m_current = next;
+
+            //Cascade the higher levels whose slot comes around at this tick
+            for(int level = 1; level < LEVELS; level++)
+            {
+                if ((m_current & ((1L << (BITS * level)) - 1)) != 0)
+                {
+                    break;
+                }
+                int slot = (int)((m_current >>> (BITS * level)) & (SLOTS - 1));
+                Timer t = takeSlot(level, slot);
+                while (t != null)
+                {
+                    Timer following = t.next;
+                    file(t);
+                    m_cascaded++;
+                    t = following;
+                }
+            }//for
+
+            //Expire everything due now
+            Timer t = takeSlot(0, (int)(m_current & (SLOTS - 1)));
+            while (t != null)
+            {
+                expired.add(t.owner);
+                m_size--;
+                m_expired++;
+                count++;
+                t = t.next;
+            }
+        }//while
+
+        return count;
+    }//advance
+
+    /**
+     * nextEvent
+     *
+     * @return the earliest tick after the current one at which the wheel has
+     *         work to do (a timer to expire or a slot to cascade) -OR- -1 if
+     *         there are no timers
+     */
+    public long nextEvent()
+    {
+        if (m_size == 0)
+        {
+            return -1;
+        }
+
+        long best = -1;
+        for(int level = 0; level < LEVELS; level++)
+        {
+            if (m_occupied[level] == 0)
+            {
+                continue;
+            }
+
+            //Find the first occupied slot after the current position
+            int shift = BITS * level;
+            int pos = (int)((m_current >>> shift) & (SLOTS - 1));
+            int rot = (pos + 1) & (SLOTS - 1);
+            long rotated = Long.rotateRight(m_occupied[level], rot);
+            int ahead = Long.numberOfTrailingZeros(rotated) + 1;
+
+            //The tick at which that slot is processed
+            long when = ((m_current >>> shift) + ahead) << shift;
+            if ((best < 0) || (when < best))
+            {
+                best = when;
+            }
+        }//for
+
+        return best;
+    }//nextEvent
+
+    /**
+     * toString
+     *
+     * @return a summary of the timer statistics
+     */
+    public String toString()
+    {
+        return m_added + " timers, " + m_expired + " expired, "
+            + m_cascaded + " cascades, " + m_size + " pending";
+    }//toString
+
+};//class TimingWheel
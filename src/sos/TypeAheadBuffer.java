@@ -0,0 +1,158 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class is the kernel's type-ahead buffer for a character device such as
+ * the keyboard.  The OS keeps the device busy producing input before any
+ * process asks for it and stores the values in a bounded ring buffer.  A
+ * read that finds a value in the buffer completes immediately instead of
+ * blocking the process until the device responds.
+ *
+ * The buffer only manages state.  The OS is responsible for issuing the
+ * device requests that fill it.
+ *
+ * @see SOS
+ * @see KeyboardDevice
+ */
+public class TypeAheadBuffer
+{
+    //======================================================================
+    // Variables
+    //----------------------------------------------------------------------
+
+    private int[] m_ring;               // the buffered values
+    private int m_head = 0;             // index of the oldest value
+    private int m_count = 0;            // number of buffered values
+    private boolean m_filling = false;  // is a fill request outstanding?
+
+    //Statistics
+    private int m_hits = 0;             // reads served from the buffer
+    private int m_misses = 0;           // reads that found the buffer empty
+
+    //======================================================================
+    // Methods
+    //----------------------------------------------------------------------
+
+    /**
+     * constructor
+     *
+     * @param capacity the maximum number of values to buffer
+     */
+    public TypeAheadBuffer(int capacity)
+    {
+        m_ring = new int[Math.max(1, capacity)];
+    }//ctor
+
+    /**
+     * isEmpty
+     *
+     * @return true if there are no buffered values
+     */
+    public boolean isEmpty()
+    {
+        return m_count == 0;
+    }
+
+    /**
+     * isFull
+     *
+     * @return true if the buffer cannot hold another value
+     */
+    public boolean isFull()
+    {
+        return m_count == m_ring.length;
+    }
+
+    /**
+     * isFilling / setFilling
+     *
+     * tracks whether the OS has a fill request outstanding on the device
+     */
+    public boolean isFilling()
+    {
+        return m_filling;
+    }
+
+    public void setFilling(boolean filling)
+    {
+        m_filling = filling;
+    }
+
+    /**
+     * put
+     *
+     * adds a value produced by the device.  The value is dropped if the
+     * buffer is full.
+     *
+     * @param value the value
+     */
+    public void put(int value)
+    {
+        if (isFull())
+        {
+            return;
+        }
+        m_ring[(m_head + m_count) % m_ring.length] = value;
+        m_count++;
+    }//put
+
+    /**
+     * take
+     *
+     * removes the oldest value.  The buffer must not be empty.
+     *
+     * @return the value
+     */
+    public int take()
+    {
+        int value = m_ring[m_head];
+        m_head = (m_head + 1) % m_ring.length;
+        m_count--;
+        return value;
+    }//take
+
+    /**
+     * recordRead
+     *
+     * records whether a process read was served from the buffer
+     *
+     * @param hit true if it was
+     */
+    public void recordRead(boolean hit)
+    {
+        if (hit)
+        {
+            m_hits++;
+        }
+        else
+        {
+            m_misses++;
+        }
+    }//recordRead
+
+    /**
+     * getHitRate
+     *
+     * @return the fraction of process reads served from the buffer
+     */
+    public double getHitRate()
+    {
+        int total = m_hits + m_misses;
+        return (total == 0) ? 0.0 : (double)m_hits / total;
+    }//getHitRate
+
+    /**
+     * toString
+     *
+     * @return a summary of the buffer statistics.  Every hit is a block (and
+     *         the context switches around it) that the reader avoided.
+     */
+    public String toString()
+    {
+        return m_hits + " hits, " + m_misses + " misses"
+            + " (hit rate " + String.format("%.2f", getHitRate()) + "), "
+            + m_hits + " context switches saved";
+    }//toString
+
+};//class TypeAheadBuffer
@@ -0,0 +1,105 @@
+package sos;
+
+import java.util.*;
+
+/**
+ * This class represents waiting for another process: a thread joining a
+ * thread that is still running or a parent waiting for a child to exit.
+ * Like the {@link TimerDevice} it has no thread of its own.  Waiting
+ * processes are blocked on it so that the scheduler treats them like any
+ * other process that is waiting for I/O.  The operation the process is
+ * blocked for tells the kinds of wait apart.  The OS wakes the waiters from
+ * the exit path of the process they wait for.
+ *
+ * @see SOS
+ */
+public class WaitDevice implements Device
+{
+    private int m_Id = -1;             // the device is not in the device table
+
+    /**
+     * getId
+     *
+     * @return the device id of this device
+     */
+    public int getId()
+    {
+        return m_Id;
+    }
+
+    /**
+     * setId
+     *
+     * sets the device id of this device
+     *
+     * @param id the new id
+     */
+    public void setId(int id)
+    {
+        m_Id = id;
+    }
+
+    /**
+     * isSharable
+     *
+     * Any number of processes can wait at once
+     *
+     * @return true
+     */
+    public boolean isSharable()
+    {
+        return true;
+    }
+
+    /**
+     * isAvailable
+     *
+     * @return true (the device never has a request in progress)
+     */
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * isReadable
+     *
+     * @return false
+     */
+    public boolean isReadable()
+    {
+        return false;
+    }
+
+    /**
+     * isWriteable
+     *
+     * @return false
+     */
+    public boolean isWriteable()
+    {
+        return false;
+    }
+
+    /**
+     * read
+     *
+     * not implemented
+     */
+    public int read(int addr)
+    {
+        //This method should never be called
+        return -1;
+    }
+
+    /**
+     * write
+     *
+     * not implemented
+     */
+    public void write(int addr, int data)
+    {
+        //This method should never be called
+    }
+
+};//class WaitDevice
@@ -0,0 +1,78 @@
+####################################################
+# This program starts four threads that each add
+# their argument (1 to 4) to a total in the memory
+# they share with the program.  The program waits for
+# all four to exit and prints the total, which is 10.
+# The threads add to the total with CAS so that no
+# update is lost when one is switched out halfway.
+# The total is kept in the program's last word so it
+# is below the threads' stacks.
+###################################################
+
+#Clear the total
+SET r0 0
+SET r3 total   #r3 = address of the total
+SAVE r0 r3
+
+#Start the threads with arguments 1 to 4
+SET r1 1       #argument for the next thread
+SET r2 1       #increment amount
+:create
+SET r0 worker
+PUSH r0        #push the label the thread starts at
+PUSH r1        #push the argument
+SET r4 20      #THREAD_CREATE sys call id
+PUSH r4        #push the sys call id
+TRAP           #start the thread
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+ADD r1 r1 r2
+SET r4 5       #limit
+BNE r1 r4 create
+
+#Join the threads (their ids are on the stack)
+SET r1 1       #threads joined
+:join
+SET r4 21      #THREAD_JOIN sys call id
+PUSH r4        #push the sys call id
+TRAP           #wait for the thread to exit
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+ADD r1 r1 r2
+SET r4 5       #limit
+BNE r1 r4 join
+
+#print the total
+LOAD r0 r3
+PUSH r0        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#exit
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
+
+#Thread: total = total + r0
+:worker
+SET r3 total   #r3 = address of the total
+COPY r2 r0     #r2 = argument
+:add
+LOAD r0 r3     #r0 = total
+ADD r1 r0 r2   #r1 = total + argument
+COPY r4 r0
+CAS r4 r1 r3   #if total == r0 then total = r1 (r4 = old total)
+BNE r4 r0 add  #someone else changed it, try again
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the thread
+
+#The total (overwrites this instruction, which never runs)
+:total
+SET r0 0
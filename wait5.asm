@@ -0,0 +1,94 @@
+####################################################
+# This program and the processes it spawns build a
+# tree of five processes.  A counter in shared memory
+# limits the number of EXEC calls to four.  Each
+# process waits for all of its children, adds up the
+# sizes of their subtrees (their exit codes), prints
+# the size of its own subtree and exits with it.  The
+# first process is the last to finish and prints 5.
+###################################################
+
+#Find (or create) the 1 word segment with key 7
+SET r0 7       #segment key
+PUSH r0        #push the key on the stack
+SET r0 1       #segment size
+PUSH r0        #push the size on the stack
+SET r4 15      #SHMGET sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #find the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+
+#Map it (the segment id is already on the stack)
+SET r4 16      #SHMAT sys call id
+PUSH r4        #push sys call id on stack
+TRAP           #attach the segment
+
+#Check for failure
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 exit #exit program on error
+POP r3         #r3 = address of the counter
+
+#Initialize the variables
+SET r1 1       #size of this subtree (this process)
+SET r2 1       #increment amount
+
+#Take a ticket: counter = counter + 1 if it is below the limit
+:spawn
+LOAD r0 r3     #r0 = counter
+SET r4 4       #limit
+BLT r0 r4 ticket
+BRANCH wait
+:ticket
+ADD r4 r0 r2   #r4 = counter + 1
+CAS r0 r4 r3   #if counter == r4 - 1 then counter = r4 (r0 = old counter)
+ADD r0 r0 r2
+BNE r0 r4 spawn #someone else took it, try again
+
+#spawn a child
+SET r4 7       #EXEC sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #make the system call
+BRANCH spawn
+
+#Wait for the children until there are none left
+:wait
+SET r4 22      #WAIT sys call id
+PUSH r4        #push the sys call id onto the stack
+TRAP           #wait for a child to exit
+POP r4         #get return code from the system call
+SET r0 0       #Success code
+BNE r0 r4 done #no children left
+POP r0         #the child's exit code
+ADD r1 r1 r0
+POP r0         #discard the child's id
+BRANCH wait
+
+#print the size of this subtree
+:done
+PUSH r1        #push the value
+SET r4 1       #OUTPUT sys call id
+PUSH r4        #push the sys call id
+TRAP           #print the value
+
+#unmap the segment
+SET r4 17      #SHMDT sys call id
+PUSH r4        #push the sys call id
+TRAP           #detach the segment
+POP r4         #discard the return code
+
+#exit with the size of this subtree
+PUSH r1        #push the exit code
+SET r4 28      #EXIT_CODE system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program
+
+#exit without a code (on error)
+:exit
+SET r4 0       #EXIT system call id
+PUSH r4        #push exit sys call id on stack
+TRAP           #exit the program